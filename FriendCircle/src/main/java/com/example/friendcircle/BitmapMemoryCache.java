@@ -0,0 +1,298 @@
+package com.example.friendcircle;
+
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory cache of decoded bitmaps. It's thread safely.
+ * The same url decoded with different profiles is cached as different variants,
+ * the key of a variant is made of url and profile, see {@link #getKey(String, DecodeProfile)},
+ * keys are built once for each url and profile by {@link ModelInterner.UrlKeys}.
+ * When the requested variant is missed, a larger variant of the same url and profile name
+ * can be scaled down to serve it, they have the same config and transforms.
+ *
+ * A bitmap which is shown or used is referenced by {@link #acquire(String, DecodeProfile)} or
+ * {@link #acquire(Bitmap)} until {@link #release(Bitmap)}. An evicted bitmap is given to BitmapPool only when
+ * nobody references it, otherwise a decoder would write another image into pixels which are still shown.
+ */
+public class BitmapMemoryCache {
+    // scaling a larger variant by more than this factor is worthwhile, otherwise reuse it directly
+    private static final float MIN_SCALE_TO_REUSE_DIRECTLY = 0.9f;
+
+    private final LruCache<String, Bitmap> mCache;
+    private final BitmapPool mBitmapPool;
+
+    // url and profile name -> keys of all its variants in mCache
+    private final Map<String, Set<String>> mVariants = new HashMap<>();
+
+    // bitmaps which are shown or used now -> count of their references
+    private final Map<Bitmap, Integer> mReferences = new IdentityHashMap<>();
+    // evicted bitmaps which were referenced then, they are pooled when they are released at last
+    private final Set<Bitmap> mEvictedInUse = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+    /**
+     * @param maxSize max size of cache in KB
+     * @param bitmapPool evicted bitmaps are put into it for reusing, it can be null
+     */
+    public BitmapMemoryCache(int maxSize, BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+        mCache = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight() / 1024;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                // newValue is not null when the entry is just replaced, its key is still in cache
+                if (null == newValue) {
+                    removeVariant(key);
+                }
+
+                // an evicted bitmap is least recently used, give it to decoders for reusing when nobody uses it
+                if (evicted && null != mBitmapPool) {
+                    recycle(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * key of memory cache, it contains url, profile name and max size of profile
+     * @param url
+     * @param profile
+     * @return
+     */
+    public static String getKey(String url, DecodeProfile profile) {
+        return getVariantKeys(url, profile).key;
+    }
+
+    private static ModelInterner.VariantKeys getVariantKeys(String url, DecodeProfile profile) {
+        return ModelInterner.getDefault().getUrlKeys(url).getVariant(profile);
+    }
+
+    private static String getGroupOfKey(String key) {
+        return key.substring(0, key.lastIndexOf(':'));
+    }
+
+    /**
+     * get bitmap of url decoded with profile.
+     * If it's missed, try to scale down a larger cached variant of the same url and profile name.
+     * @param url
+     * @param profile
+     * @return null if there is neither the variant nor a larger one
+     */
+    public Bitmap get(String url, DecodeProfile profile) {
+        return get(url, profile, false);
+    }
+
+    /**
+     * get bitmap like {@link #get(String, DecodeProfile)} and reference it at the same time,
+     * so it cannot be evicted into pool between them
+     * @param url
+     * @param profile
+     * @return null if it's missed, otherwise it should be released when it's not used any longer
+     */
+    public Bitmap acquire(String url, DecodeProfile profile) {
+        return get(url, profile, true);
+    }
+
+    /**
+     * Bitmaps are found and referenced under the lock of references, a larger variant is scaled outside it,
+     * so scaling never blocks workers which acquire or release bitmaps.
+     * @param url
+     * @param profile
+     * @param acquire whether the bitmap returned is referenced for the caller
+     * @return
+     */
+    private Bitmap get(String url, DecodeProfile profile, boolean acquire) {
+        final ModelInterner.VariantKeys keys = getVariantKeys(url, profile);
+        final Bitmap larger;
+        final float scale;
+        synchronized (mReferences) {
+            Bitmap bitmap = mCache.get(keys.key);
+            if (null != bitmap) {
+                if (acquire) acquire(bitmap);
+                return bitmap;
+            }
+
+            // request without size wants the original bitmap, no other variant can serve it
+            final int reqWidth = profile.getTargetWidth();
+            final int reqHeight = profile.getTargetHeight();
+            if (reqWidth <= 0 || reqHeight <= 0) {
+                return null;
+            }
+
+            larger = findSmallestCovering(keys.group, reqWidth, reqHeight, profile.isFitInside());
+            if (null == larger) {
+                return null;
+            }
+
+            // it's close to request size, reuse it directly rather than caching the same bitmap twice
+            scale = getScale(larger, reqWidth, reqHeight, profile.isFitInside());
+            if (scale >= MIN_SCALE_TO_REUSE_DIRECTLY) {
+                if (acquire) acquire(larger);
+                return larger;
+            }
+            // it cannot be pooled and overwritten while it's being scaled
+            acquire(larger);
+        }
+
+        // scale it to request size as it's decoded, keep its aspect ratio
+        final Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createScaledBitmap(larger,
+                    Math.max(1, Math.round(larger.getWidth() * scale)),
+                    Math.max(1, Math.round(larger.getHeight() * scale)), true);
+        } finally {
+            release(larger);
+        }
+        // referenced before it's cached, so it cannot be evicted into pool before the caller gets it
+        if (acquire) acquire(bitmap);
+        put(url, profile, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * reference a bitmap which is not in pool, i.e. it's not cached yet or it's referenced by the caller
+     * @param bitmap
+     */
+    public void acquire(Bitmap bitmap) {
+        if (null == bitmap) return;
+        synchronized (mReferences) {
+            Integer count = mReferences.get(bitmap);
+            mReferences.put(bitmap, null == count ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * release a reference of bitmap, it's pooled if it has been evicted and nobody references it now
+     * @param bitmap
+     */
+    public void release(Bitmap bitmap) {
+        if (null == bitmap) return;
+        synchronized (mReferences) {
+            Integer count = mReferences.get(bitmap);
+            if (null == count) return;
+            if (count > 1) {
+                mReferences.put(bitmap, count - 1);
+                return;
+            }
+            mReferences.remove(bitmap);
+            if (mEvictedInUse.remove(bitmap) && null != mBitmapPool) {
+                mBitmapPool.put(bitmap);
+            }
+        }
+    }
+
+    private void recycle(Bitmap bitmap) {
+        synchronized (mReferences) {
+            if (mReferences.containsKey(bitmap)) {
+                mEvictedInUse.add(bitmap);
+            } else {
+                mBitmapPool.put(bitmap);
+            }
+        }
+    }
+
+    /**
+     * put a bitmap variant into cache, if the variant is already cached, keep the old one.
+     * @param url
+     * @param profile
+     * @param bitmap
+     */
+    public void put(String url, DecodeProfile profile, Bitmap bitmap) {
+        if (null == bitmap) return;
+
+        final ModelInterner.VariantKeys variant = getVariantKeys(url, profile);
+        final String key = variant.key;
+        final String group = variant.group;
+        synchronized (mVariants) {
+            if (null != mCache.get(key)) return;
+
+            Set<String> keys = mVariants.get(group);
+            if (null == keys) {
+                keys = new HashSet<>();
+                mVariants.put(group, keys);
+            }
+            keys.add(key);
+        }
+        mCache.put(key, bitmap);
+    }
+
+    /**
+     * @param bitmap
+     * @param reqWidth
+     * @param reqHeight
+     * @param fitInside whether bitmap should fit inside request size, otherwise it should fill it
+     * @return scale of bitmap to request size
+     */
+    private static float getScale(Bitmap bitmap, int reqWidth, int reqHeight, boolean fitInside) {
+        final float scaleX = (float) reqWidth / bitmap.getWidth();
+        final float scaleY = (float) reqHeight / bitmap.getHeight();
+        return fitInside ? Math.min(scaleX, scaleY) : Math.max(scaleX, scaleY);
+    }
+
+    /**
+     * find the smallest cached variant of group which is not smaller than request size
+     * @param group
+     * @param reqWidth
+     * @param reqHeight
+     * @param fitInside how variants of group are decoded
+     * @return
+     */
+    private Bitmap findSmallestCovering(String group, int reqWidth, int reqHeight, boolean fitInside) {
+        List<String> keys;
+        synchronized (mVariants) {
+            Set<String> variants = mVariants.get(group);
+            if (null == variants || variants.isEmpty()) {
+                return null;
+            }
+            keys = new ArrayList<>(variants);
+        }
+
+        Bitmap smallest = null;
+        for (String key : keys) {
+            Bitmap bitmap = mCache.get(key);
+            if (null == bitmap) continue;
+
+            // it should meet request size after scaled down with its aspect ratio
+            if (getScale(bitmap, reqWidth, reqHeight, fitInside) > 1) continue;
+
+            if (null == smallest || bitmap.getWidth() * bitmap.getHeight() < smallest.getWidth() * smallest.getHeight()) {
+                smallest = bitmap;
+            }
+        }
+        return smallest;
+    }
+
+    private void removeVariant(String key) {
+        final String group = getGroupOfKey(key);
+        synchronized (mVariants) {
+            Set<String> keys = mVariants.get(group);
+            if (null != keys) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    mVariants.remove(group);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return mCache.size();
+    }
+
+    public int maxSize() {
+        return mCache.maxSize();
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.friendcircle;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of bitmaps evicted from memory cache, they are reused by decoders through {@link BitmapFactory.Options#inBitmap}.
+ * Bitmaps are bucketed by their allocation size. It's thread safely.
+ */
+public class BitmapPool {
+    // don't reuse a bitmap whose allocation is more than this multiple of the needed size, it wastes heap
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final int mMaxSize;   // max size of pool in bytes
+    private int mSize;
+
+    // allocation size -> bitmaps in that bucket
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<>();
+    // all pooled bitmaps, the oldest is evicted first when pool is full
+    private final LinkedList<Bitmap> mOrder = new LinkedList<>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    /**
+     * @param maxSize max size of pool in bytes
+     */
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * put a bitmap which is no longer used into pool
+     * @param bitmap
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (null == bitmap || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        final int size = getAllocationSize(bitmap);
+        if (size > mMaxSize) {
+            return;
+        }
+
+        LinkedList<Bitmap> bucket = mBuckets.get(size);
+        if (null == bucket) {
+            bucket = new LinkedList<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mOrder.add(bitmap);
+        mSize += size;
+        ++mPutCount;
+
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * get a bitmap which can be used as inBitmap for the decode
+     * @param options options whose inSampleSize, densities, inPreferredConfig and out-size have been set by bounds decoding
+     * @return null if there is no suitable one
+     */
+    public synchronized Bitmap get(BitmapFactory.Options options) {
+        // round up, some decoders keep the partial pixel when sampling
+        final int sampleSize = Math.max(1, options.inSampleSize);
+        final boolean scaled = options.inScaled && options.inDensity > 0 && options.inTargetDensity > 0
+                && options.inDensity != options.inTargetDensity;
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        if (scaled) {
+            width = DecodeSizeCalculator.getScaledSize(width, options.inDensity, options.inTargetDensity);
+            height = DecodeSizeCalculator.getScaledSize(height, options.inDensity, options.inTargetDensity);
+        }
+        final Bitmap.Config config = null == options.inPreferredConfig ? Bitmap.Config.ARGB_8888 : options.inPreferredConfig;
+        return get(width, height, config, 1 == sampleSize && !scaled);
+    }
+
+    /**
+     * get a mutable bitmap of the size and config, e.g. to draw a transformed bitmap into it.
+     * Its content is not cleared.
+     * @param width
+     * @param height
+     * @param config
+     * @return null if there is no suitable one
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap result = get(width, height, config, true);
+        // before KitKat it's got only with the same size and config
+        if (null != result && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && (result.getWidth() != width || result.getHeight() != height || result.getConfig() != config)) {
+            result.reconfigure(width, height, config);
+        }
+        return result;
+    }
+
+    /**
+     * @param exactSizeAllowed whether a bitmap of the same size and config can be taken before KitKat
+     */
+    private Bitmap get(int width, int height, Bitmap.Config config, boolean exactSizeAllowed) {
+        final int needed = width * height * getBytesPerPixel(config);
+
+        Bitmap result = null;
+        if (width > 0 && height > 0) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                // from KitKat, any bitmap whose allocation is not smaller than needed can be reused
+                for (Map.Entry<Integer, LinkedList<Bitmap>> entry : mBuckets.tailMap(needed).entrySet()) {
+                    if (entry.getKey() > needed * MAX_SIZE_MULTIPLE) break;
+                    result = removeFirstMatch(entry.getValue(), 0, 0, null);
+                    if (null != result) break;
+                }
+            } else if (exactSizeAllowed) {
+                // before KitKat, only a bitmap with the same size and config can be reused without sampling or scaling
+                LinkedList<Bitmap> bucket = mBuckets.get(needed);
+                if (null != bucket) {
+                    result = removeFirstMatch(bucket, width, height, config);
+                }
+            }
+        }
+
+        if (null == result) {
+            ++mMissCount;
+            return null;
+        }
+        ++mHitCount;
+        final int size = getAllocationSize(result);
+        mOrder.remove(result);
+        mSize -= size;
+        if (mBuckets.get(size).isEmpty()) {
+            mBuckets.remove(size);
+        }
+        return result;
+    }
+
+    /**
+     * remove first bitmap matched in bucket, width/height/config are not checked when config is null
+     */
+    private static Bitmap removeFirstMatch(LinkedList<Bitmap> bucket, int width, int height, Bitmap.Config config) {
+        for (Iterator<Bitmap> iterator = bucket.iterator(); iterator.hasNext(); ) {
+            Bitmap bitmap = iterator.next();
+            if (null == config
+                    || bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                iterator.remove();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mOrder.isEmpty()) {
+            Bitmap eldest = mOrder.removeFirst();
+            final int size = getAllocationSize(eldest);
+            LinkedList<Bitmap> bucket = mBuckets.get(size);
+            bucket.remove(eldest);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(size);
+            }
+            mSize -= size;
+            ++mEvictionCount;
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private static int getAllocationSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{" +
+                "size=" + mSize +
+                ", maxSize=" + mMaxSize +
+                ", hits=" + mHitCount +
+                ", misses=" + mMissCount +
+                ", puts=" + mPutCount +
+                ", evictions=" + mEvictionCount +
+                '}';
+    }
+}
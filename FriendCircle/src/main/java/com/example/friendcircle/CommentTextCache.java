@@ -0,0 +1,225 @@
+package com.example.friendcircle;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.SpannedString;
+import android.text.TextUtils;
+import android.text.style.ForegroundColorSpan;
+import android.util.LruCache;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comments of a tweet are shown as one text, "nick:content" a line with colored nick.
+ * The text is built once per tweet in a background thread and cached, a row only sets it to a TextView.
+ * At most collapsedCount comments are in collapsed text, the full text is built only when it's asked for,
+ * so binding a tweet costs the same however many comments it has.
+ */
+public class CommentTextCache {
+    // tweets whose texts are kept, a few screens
+    private static final int CACHE_SIZE = 200;
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * texts of a tweet's comments
+     */
+    public static class CommentText {
+        // comments it's built from, a tweet whose comments are another list is built again
+        final List<TweetBean.CommentBean> comments;
+        // comments which are shown, i.e. with nick and content
+        public final int count;
+        // the first collapsedCount comments
+        public final CharSequence collapsed;
+        // all comments, null until it's built
+        volatile CharSequence full;
+
+        CommentText(List<TweetBean.CommentBean> comments, int count, CharSequence collapsed, CharSequence full) {
+            this.comments = comments;
+            this.count = count;
+            this.collapsed = collapsed;
+            this.full = full;
+        }
+
+        public CharSequence getFull() {
+            return full;
+        }
+
+        /**
+         * @return whether it has more comments than collapsed text
+         */
+        public boolean hasMore() {
+            return full != collapsed;
+        }
+    }
+
+    /**
+     * called on UI thread when full text is built
+     */
+    public interface Callback {
+        void onFullText(TweetBean tweet, CommentText text);
+    }
+
+    private static final CommentText EMPTY = new CommentText(null, 0, "", "");
+
+    private final int mCollapsedCount;
+    private final int mNickColor;
+    private final LruCache<Long, CommentText> mCache = new LruCache<>(CACHE_SIZE);
+    // ids of tweets whose texts are queued or being built by prefetch, they are not queued again
+    private final Set<Long> mPrefetching = Collections.synchronizedSet(new HashSet<Long>());
+    private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * @param collapsedCount comments shown before "show more"
+     * @param nickColor
+     */
+    public CommentTextCache(int collapsedCount, int nickColor) {
+        mCollapsedCount = collapsedCount;
+        mNickColor = nickColor;
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "CommentTextCache");
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get text of tweet's comments to be shown now. It's built at once if it's not prefetched,
+     * only the first collapsedCount comments are built then. It should be called in UI thread.
+     * @param tweet
+     * @return
+     */
+    public CommentText get(TweetBean tweet) {
+        CommentText text = getCached(tweet);
+        if (null == text) {
+            text = build(tweet.getComments(), false);
+            mCache.put(tweet.getId(), text);
+        }
+        return text;
+    }
+
+    /**
+     * get full text of tweet's comments, it's built in background if it's not built yet
+     * @param tweet
+     * @param callback called on UI thread, at once if it's built already
+     */
+    public void getFull(final TweetBean tweet, final Callback callback) {
+        final CommentText text = get(tweet);
+        if (null != text.full) {
+            callback.onFullText(tweet, text);
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final CommentText built = build(tweet.getComments(), true);
+                text.full = built.full;
+                mUiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFullText(tweet, text);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * build texts of tweets in background before they are shown, e.g. tweets in prefetch window
+     * @param tweets
+     * @param from
+     * @param to
+     */
+    public void prefetch(List<TweetBean> tweets, int from, int to) {
+        for (int i = Math.max(0, from), end = Math.min(to, tweets.size()); i < end; ++i) {
+            final TweetBean tweet = tweets.get(i);
+            if (null == tweet || null != getCached(tweet)) continue;
+            // prefetch window is updated every scroll frame, the tweet may be queued already
+            final long id = tweet.getId();
+            if (!mPrefetching.add(id)) continue;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (null != getCached(tweet)) return;
+                        mCache.put(id, build(tweet.getComments(), true));
+                    } finally {
+                        mPrefetching.remove(id);
+                    }
+                }
+            });
+        }
+    }
+
+    private CommentText getCached(TweetBean tweet) {
+        CommentText text = mCache.get(tweet.getId());
+        // tweet has been refreshed with other comments
+        if (null != text && text.comments != tweet.getComments()) {
+            return null;
+        }
+        return text;
+    }
+
+    /**
+     * @param comments
+     * @param full whether full text is built too, otherwise only collapsed one
+     * @return texts are SpannedString, TextView shows them without copying
+     */
+    private CommentText build(List<TweetBean.CommentBean> comments, boolean full) {
+        if (null == comments) return EMPTY;
+
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        CharSequence collapsed = null;
+        int count = 0;
+        for (TweetBean.CommentBean comment : comments) {
+            // discard comment has no content or sender nick
+            if (null == comment || null == comment.getSender()
+                    || TextUtils.isEmpty(comment.getSender().getNick()) || TextUtils.isEmpty(comment.getContent())) {
+                continue;
+            }
+            if (count == mCollapsedCount) {
+                collapsed = new SpannedString(builder);
+            }
+            // the rest are only counted when full text is not wanted
+            if (count < mCollapsedCount || full) {
+                if (count > 0) {
+                    builder.append('\n');
+                }
+                final int start = builder.length();
+                builder.append(comment.getSender().getNick()).append(':');
+                builder.setSpan(new ForegroundColorSpan(mNickColor), start, builder.length(),
+                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+                builder.append(comment.getContent());
+            }
+            ++count;
+        }
+
+        if (null == collapsed) {
+            // not more than collapsedCount, collapsed text is the full one
+            CharSequence text = new SpannedString(builder);
+            return new CommentText(comments, count, text, text);
+        }
+        return new CommentText(comments, count, collapsed, full ? new SpannedString(builder) : null);
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.friendcircle;
+
+import android.os.Build;
+import android.os.Process;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text layouts of tweets' contents for the width of content view. A layout is built once per tweet
+ * in a background thread and cached by tweet id with its line count, a row only draws it.
+ * Layouts of another width are useless, they are all dropped when the width changes.
+ */
+public class ContentLayoutCache {
+    // tweets whose layouts are kept, a few screens
+    private static final int CACHE_SIZE = 200;
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * layouts of a tweet's content
+     */
+    public static class ContentLayout {
+        // content and width it's built for
+        final String content;
+        final int width;
+        // all lines
+        public final Layout full;
+        // the first maxLines lines, ellipsized if it's supported, otherwise the full one which is clipped
+        public final Layout collapsed;
+        public final int lineCount;
+        // whether it has more lines than maxLines
+        public final boolean overflow;
+
+        ContentLayout(String content, int width, Layout full, Layout collapsed, boolean overflow) {
+            this.content = content;
+            this.width = width;
+            this.full = full;
+            this.collapsed = collapsed;
+            this.lineCount = full.getLineCount();
+            this.overflow = overflow;
+        }
+    }
+
+    private final TextPaint mPaint;
+    private final int mMaxLines;
+    private volatile int mWidth;
+    private final LruCache<Long, ContentLayout> mCache = new LruCache<>(CACHE_SIZE);
+    // ids of tweets whose layouts are queued or being built by prefetch, they are not queued again
+    private final Set<Long> mPrefetching = Collections.synchronizedSet(new HashSet<Long>());
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * @param paint paint of content, it's only read after then, so it's shared by layouts and threads
+     * @param maxLines lines shown when content is collapsed
+     * @param width width of content view which is known by now, it's corrected by {@link #setWidth(int)}
+     */
+    public ContentLayoutCache(TextPaint paint, int maxLines, int width) {
+        mPaint = paint;
+        mMaxLines = maxLines;
+        mWidth = Math.max(0, width);
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "ContentLayoutCache");
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * width of content view has changed, e.g. it's laid out the first time or rotated
+     * @param width
+     * @return whether it's changed, cached layouts are dropped then
+     */
+    public boolean setWidth(int width) {
+        width = Math.max(0, width);
+        if (width == mWidth) return false;
+        mWidth = width;
+        mCache.evictAll();
+        return true;
+    }
+
+    /**
+     * Get layout of tweet's content to be shown now. It's built at once if it's not prefetched.
+     * It should be called in UI thread.
+     * @param tweet
+     * @return
+     */
+    public ContentLayout get(TweetBean tweet) {
+        final int width = mWidth;
+        ContentLayout layout = getCached(tweet, width);
+        if (null == layout) {
+            layout = build(tweet.getContent(), width);
+            mCache.put(tweet.getId(), layout);
+        }
+        return layout;
+    }
+
+    /**
+     * build layouts of tweets in background before they are shown, e.g. tweets in prefetch window
+     * @param tweets
+     * @param from
+     * @param to
+     */
+    public void prefetch(List<TweetBean> tweets, int from, int to) {
+        final int width = mWidth;
+        if (0 == width) return;
+        for (int i = Math.max(0, from), end = Math.min(to, tweets.size()); i < end; ++i) {
+            final TweetBean tweet = tweets.get(i);
+            if (null == tweet || TextUtils.isEmpty(tweet.getContent()) || null != getCached(tweet, width)) continue;
+            // prefetch window is updated every scroll frame, the tweet may be queued already
+            final long id = tweet.getId();
+            if (!mPrefetching.add(id)) continue;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // width has changed since then, it would be useless
+                        if (width != mWidth || null != getCached(tweet, width)) return;
+                        mCache.put(id, build(tweet.getContent(), width));
+                    } finally {
+                        mPrefetching.remove(id);
+                    }
+                }
+            });
+        }
+    }
+
+    private ContentLayout getCached(TweetBean tweet, int width) {
+        ContentLayout layout = mCache.get(tweet.getId());
+        // built for another width, or tweet has been refreshed with other content
+        if (null != layout && (layout.width != width || !TextUtils.equals(layout.content, tweet.getContent()))) {
+            return null;
+        }
+        return layout;
+    }
+
+    /**
+     * layouts are built as TextView does by default, so they look the same
+     * @param content
+     * @param width
+     * @return
+     */
+    private ContentLayout build(String content, int width) {
+        final CharSequence text = null == content ? "" : content;
+        final Layout full = new StaticLayout(text, mPaint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+        if (full.getLineCount() <= mMaxLines) {
+            return new ContentLayout(content, width, full, full, false);
+        }
+
+        Layout collapsed = full;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            collapsed = StaticLayout.Builder.obtain(text, 0, text.length(), mPaint, width)
+                    .setMaxLines(mMaxLines)
+                    .setEllipsize(TextUtils.TruncateAt.END)
+                    .build();
+        }
+        return new ContentLayout(content, width, full, collapsed, true);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.friendcircle;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Shows a text layout which has been built already, e.g. by {@link ContentLayoutCache}, so it's measured
+ * by height of the layout and drawn at once, the text is never laid out in UI thread.
+ *
+ * When width for text differs from width of layout, {@link OnTextWidthChangedListener} is told in measure
+ * and it should set a layout for the new width.
+ */
+public class ContentTextView extends View {
+    /**
+     * called in measure when width for text has changed
+     */
+    public interface OnTextWidthChangedListener {
+        void onTextWidthChanged(ContentTextView view, int width);
+    }
+
+    private Layout mLayout;
+    // lines of layout are shown
+    private int mMaxLines = Integer.MAX_VALUE;
+    private OnTextWidthChangedListener mOnTextWidthChangedListener;
+    private boolean mInMeasure;
+
+    public ContentTextView(Context context) {
+        super(context);
+    }
+
+    public ContentTextView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public ContentTextView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    public void setOnTextWidthChangedListener(OnTextWidthChangedListener listener) {
+        mOnTextWidthChangedListener = listener;
+    }
+
+    /**
+     * @param layout null shows nothing
+     * @param maxLines lines beyond it are clipped
+     */
+    public void setLayout(Layout layout, int maxLines) {
+        if (layout == mLayout && maxLines == mMaxLines) return;
+        mLayout = layout;
+        mMaxLines = maxLines;
+        // it's set in measure by the listener, it will be measured by it now
+        if (!mInMeasure) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    public Layout getLayout() {
+        return mLayout;
+    }
+
+    private int getTextHeight() {
+        if (null == mLayout) return 0;
+        return mLayout.getLineTop(Math.min(mMaxLines, mLayout.getLineCount()));
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        final int textWidth = Math.max(0, width - getPaddingLeft() - getPaddingRight());
+        if (null != mLayout && mLayout.getWidth() != textWidth && null != mOnTextWidthChangedListener) {
+            mInMeasure = true;
+            try {
+                mOnTextWidthChangedListener.onTextWidthChanged(this, textWidth);
+            } finally {
+                mInMeasure = false;
+            }
+        }
+
+        final int height = null == mLayout ? 0 : getTextHeight() + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (null == mLayout) return;
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        canvas.clipRect(0, 0, mLayout.getWidth(), getTextHeight());
+        mLayout.draw(canvas);
+        canvas.restore();
+    }
+}
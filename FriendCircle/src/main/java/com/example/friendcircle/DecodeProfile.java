@@ -0,0 +1,151 @@
+package com.example.friendcircle;
+
+import android.graphics.Bitmap;
+
+/**
+ * How an image is decoded for its role in list, e.g. sender avatar, grid image, single image and profile header.
+ * A profile sets Bitmap.Config, target size of decoded bitmap, whether the bitmap fills that size or fits inside it,
+ * and whether it's center cropped to that size at decode time. Opaque photos are decoded in RGB_565 which halves bytes per pixel, images with alpha keep ARGB_8888
+ * because decoders ignore RGB_565 for them.
+ * Bitmaps of different profiles are cached separately, see {@link BitmapMemoryCache#getKey(String, DecodeProfile)}.
+ */
+public class DecodeProfile {
+    public static final String NAME_DEFAULT = "default";
+    public static final String NAME_AVATAR  = "avatar";
+    public static final String NAME_GRID    = "grid";
+    public static final String NAME_SINGLE  = "single";
+    public static final String NAME_PROFILE = "profile";
+
+    private final String mName;
+    private final Bitmap.Config mConfig;
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+    // whether decoded bitmap fits inside target size, otherwise it fills target size
+    private final boolean mFitInside;
+    private final boolean mCenterCrop;
+    private final String mKey;
+
+    private DecodeProfile(Builder builder) {
+        mName = builder.mName;
+        mConfig = builder.mConfig;
+        mTargetWidth = builder.mTargetWidth;
+        mTargetHeight = builder.mTargetHeight;
+        mFitInside = builder.mFitInside;
+        mCenterCrop = !mFitInside && builder.mCenterCrop && builder.mTargetWidth > 0 && builder.mTargetHeight > 0;
+        // variants decoded in another way never serve each other, not even from disk cache
+        mKey = mName + ":" + (mFitInside ? "max" : "") + mTargetWidth + "x" + mTargetHeight;
+    }
+
+    /**
+     * profile which decodes with ARGB_8888 and fills the size, as what bindBitmap with request size does
+     * @param reqWidth
+     * @param reqHeight
+     * @return
+     */
+    public static DecodeProfile ofSize(int reqWidth, int reqHeight) {
+        return new Builder(NAME_DEFAULT).setTargetSize(reqWidth, reqHeight).build();
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public Bitmap.Config getConfig() {
+        return mConfig;
+    }
+
+    public int getTargetWidth() {
+        return mTargetWidth;
+    }
+
+    public int getTargetHeight() {
+        return mTargetHeight;
+    }
+
+    public boolean isFitInside() {
+        return mFitInside;
+    }
+
+    public boolean isCenterCrop() {
+        return mCenterCrop;
+    }
+
+    /**
+     * key of profile, it contains name and target size.
+     * Profiles with the same name must have the same config and transforms.
+     * @return
+     */
+    public String getKey() {
+        return mKey;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeProfile{" + mKey + ", " + mConfig + (mFitInside ? ", fitInside" : "")
+                + (mCenterCrop ? ", centerCrop" : "") + '}';
+    }
+
+    /**
+     * Builder of DecodeProfile, it decodes with ARGB_8888 in source size without transforms by default.
+     */
+    public static class Builder {
+        private final String mName;
+        private Bitmap.Config mConfig = Bitmap.Config.ARGB_8888;
+        private int mTargetWidth;
+        private int mTargetHeight;
+        private boolean mFitInside;
+        private boolean mCenterCrop;
+
+        public Builder(String name) {
+            mName = name;
+        }
+
+        public Builder setConfig(Bitmap.Config config) {
+            mConfig = config;
+            return this;
+        }
+
+        /**
+         * decoded bitmap keeps aspect ratio of image and fills this size, as a CENTER_CROP view in that size needs.
+         * A size is not positive for no limit.
+         * @param targetWidth
+         * @param targetHeight
+         * @return
+         */
+        public Builder setTargetSize(int targetWidth, int targetHeight) {
+            mTargetWidth = targetWidth;
+            mTargetHeight = targetHeight;
+            mFitInside = false;
+            return this;
+        }
+
+        /**
+         * decoded bitmap keeps aspect ratio of image and fits inside this size, as a view shows it within max size.
+         * A size is not positive for no limit.
+         * @param maxWidth
+         * @param maxHeight
+         * @return
+         */
+        public Builder setMaxSize(int maxWidth, int maxHeight) {
+            mTargetWidth = maxWidth;
+            mTargetHeight = maxHeight;
+            mFitInside = true;
+            return this;
+        }
+
+        /**
+         * crop the center of decoded bitmap to target size, as CENTER_CROP of a view in that size shows.
+         * It's ignored when bitmap fits inside max size
+         * @param centerCrop
+         * @return
+         */
+        public Builder setCenterCrop(boolean centerCrop) {
+            mCenterCrop = centerCrop;
+            return this;
+        }
+
+        public DecodeProfile build() {
+            return new DecodeProfile(this);
+        }
+    }
+}
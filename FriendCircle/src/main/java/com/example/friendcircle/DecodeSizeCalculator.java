@@ -0,0 +1,169 @@
+package com.example.friendcircle;
+
+/**
+ * Size math of decoding a bitmap with request size, it has no Android dependency so it's unit tested on host.
+ * The target size keeps aspect ratio of image and fills the request size, or fits inside it by {@link #calculateFit},
+ * an image is never scaled up.
+ * Decoding takes two steps: the image is sampled by the largest power of two which doesn't undershoot the target size,
+ * then the sampled image is scaled to the exact target size by inDensity/inTargetDensity.
+ * Densities are taken from source size of the axis which meets request size exactly, the decoded size is
+ * within one pixel of target size no matter the decoder rounds sampled size up or down.
+ */
+public class DecodeSizeCalculator {
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+    private final int mSampleSize;
+    private final int mDensity;         // 0 if no scaling is needed
+    private final int mTargetDensity;   // 0 if no scaling is needed
+
+    private DecodeSizeCalculator(int targetWidth, int targetHeight, int sampleSize, int density, int targetDensity) {
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+        mSampleSize = sampleSize;
+        mDensity = density;
+        mTargetDensity = targetDensity;
+    }
+
+    /**
+     * When one of request sizes is not positive, it's constrained by the other one only,
+     * when neither is positive, the image is decoded in source size.
+     * @param srcWidth
+     * @param srcHeight
+     * @param reqWidth
+     * @param reqHeight
+     * @return
+     */
+    public static DecodeSizeCalculator calculate(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+        return calculate(srcWidth, srcHeight, reqWidth, reqHeight, false);
+    }
+
+    /**
+     * Target size fits inside request size, e.g. an image shown within max width and max height.
+     * Not positive request sizes are treated as {@link #calculate(int, int, int, int)} does.
+     * @param srcWidth
+     * @param srcHeight
+     * @param reqWidth
+     * @param reqHeight
+     * @return
+     */
+    public static DecodeSizeCalculator calculateFit(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+        return calculate(srcWidth, srcHeight, reqWidth, reqHeight, true);
+    }
+
+    private static DecodeSizeCalculator calculate(int srcWidth, int srcHeight, int reqWidth, int reqHeight,
+                                                  boolean fit) {
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            return new DecodeSizeCalculator(srcWidth, srcHeight, 1, 0, 0);
+        }
+
+        final float scaleX = reqWidth > 0 ? (float) reqWidth / srcWidth : 0;
+        final float scaleY = reqHeight > 0 ? (float) reqHeight / srcHeight : 0;
+        if (0 == scaleX && 0 == scaleY) {
+            return new DecodeSizeCalculator(srcWidth, srcHeight, 1, 0, 0);
+        }
+
+        // filling: the axis with larger scale meets request size exactly, the other one covers its request size.
+        // fitting: the axis with smaller scale meets request size exactly, the other one is within its request size
+        final boolean byWidth;
+        if (0 == scaleY) {
+            byWidth = true;
+        } else if (0 == scaleX) {
+            byWidth = false;
+        } else {
+            byWidth = fit ? scaleX <= scaleY : scaleX >= scaleY;
+        }
+        if ((byWidth ? scaleX : scaleY) >= 1) {
+            return new DecodeSizeCalculator(srcWidth, srcHeight, 1, 0, 0);
+        }
+
+        final int targetWidth;
+        final int targetHeight;
+        final int srcSize;
+        final int targetSize;
+        if (byWidth) {
+            targetWidth = reqWidth;
+            targetHeight = Math.max(1, Math.round(srcHeight * scaleX));
+            srcSize = srcWidth;
+            targetSize = targetWidth;
+        } else {
+            targetWidth = Math.max(1, Math.round(srcWidth * scaleY));
+            targetHeight = reqHeight;
+            srcSize = srcHeight;
+            targetSize = targetHeight;
+        }
+
+        final int sampleSize = calculateInSampleSize(srcWidth, srcHeight, targetWidth, targetHeight);
+        // sampled size * targetDensity / density == srcSize / sampleSize * targetSize * sampleSize / srcSize
+        return new DecodeSizeCalculator(targetWidth, targetHeight, sampleSize, srcSize, targetSize * sampleSize);
+    }
+
+    /**
+     * calculate the largest power of two sample size whose sampled image is not smaller than target size
+     * @param srcWidth
+     * @param srcHeight
+     * @param targetWidth
+     * @param targetHeight
+     * @return
+     */
+    public static int calculateInSampleSize(int srcWidth, int srcHeight, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return inSampleSize;
+        }
+        // the sampled image has at least one pixel in each axis
+        while (inSampleSize * 2 <= Math.min(srcWidth, srcHeight)
+                && getSampledSize(srcWidth, inSampleSize * 2) >= targetWidth
+                && getSampledSize(srcHeight, inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * size of one axis after sampled, rounded down as the conservative case of decoders
+     * @param srcSize
+     * @param sampleSize
+     * @return
+     */
+    public static int getSampledSize(int srcSize, int sampleSize) {
+        return Math.max(1, srcSize / Math.max(1, sampleSize));
+    }
+
+    /**
+     * size of one axis after scaled by density, the same rounding as BitmapFactory
+     * @param size
+     * @param density
+     * @param targetDensity
+     * @return
+     */
+    public static int getScaledSize(int size, int density, int targetDensity) {
+        if (density <= 0 || targetDensity <= 0 || density == targetDensity) {
+            return size;
+        }
+        return (int) (size * ((float) targetDensity / density) + 0.5f);
+    }
+
+    public int getTargetWidth() {
+        return mTargetWidth;
+    }
+
+    public int getTargetHeight() {
+        return mTargetHeight;
+    }
+
+    public int getSampleSize() {
+        return mSampleSize;
+    }
+
+    public int getDensity() {
+        return mDensity;
+    }
+
+    public int getTargetDensity() {
+        return mTargetDensity;
+    }
+
+    public boolean needsScaling() {
+        return mDensity > 0 && mTargetDensity > 0 && mDensity != mTargetDensity;
+    }
+}
@@ -0,0 +1,545 @@
+package com.example.friendcircle;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler of image downloads. Every host has at most maxRequestsPerHost requests running, the others wait
+ * in its queue without holding a thread, urgent ones first, so hundreds of prefetches never race for a few hosts
+ * and time out together. Connections are kept alive by the connection pool of client and reused by the queue.
+ *
+ * A transient failure, i.e. an IOException, 408, 429 or 5xx, is retried after an exponential backoff with
+ * full jitter: a random delay in [0, min(maxDelay, baseDelay * 2^retry)], so failed requests don't come back
+ * at the same moment. An urgent download which has no response after hedgeDelay gets a hedged second request
+ * when its host has a free slot, the first response wins and the other call is cancelled.
+ *
+ * Attempts run on the given executor as {@link LoaderExecutor.StageTask}, a dropped attempt fails its download.
+ * A download nobody wants any longer is dropped before it's started, and its running calls are cancelled
+ * when its host is pumped, so the slot goes to the next one.
+ * It's thread safely.
+ */
+public class DownloadScheduler {
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * callback of a download, it's called on the thread of attempt
+     */
+    public interface Callback {
+        /**
+         * @param response successful, or failed for good e.g. 404. Its body should be closed
+         * @throws IOException reading body failed, the download is not retried
+         */
+        void onResponse(Response response) throws IOException;
+
+        void onFailure(IOException e);
+
+        /**
+         * it's asked before an attempt starts, and for running attempts whenever their host is pumped
+         * @return whether nobody wants the download any longer, then it's dropped without calling back
+         */
+        boolean isCancelled();
+    }
+
+    /**
+     * requests running and waiting for a host
+     */
+    private static class HostState {
+        int running;
+        final Deque<Download> pending = new ArrayDeque<>();
+        // downloads which have calls running
+        final List<Download> downloading = new ArrayList<>();
+    }
+
+    /**
+     * a download with its attempts, guarded by the scheduler
+     */
+    private static class Download {
+        final Request request;
+        final String host;
+        // it's promoted when a view starts waiting for it
+        volatile boolean urgent;
+        final Callback callback;
+
+        // calls of attempts running now, the primary one and maybe the hedged one
+        final List<Call> calls = new ArrayList<>(2);
+        // attempts started and not finished yet, including the ones still queued in executor
+        int attempts;
+        int retries;
+        boolean hedged;
+        boolean done;
+
+        Download(Request request, boolean urgent, Callback callback) {
+            this.request = request;
+            this.host = request.url().getHost();
+            this.urgent = urgent;
+            this.callback = callback;
+        }
+    }
+
+    private final OkHttpClient mClient;
+    private final Executor mExecutor;
+    private final int mMaxRequestsPerHost;
+    private final int mMaxRetries;
+    private final long mBaseDelayMs;
+    private final long mMaxDelayMs;
+    // 0 means no hedged request
+    private final long mHedgeDelayMs;
+
+    private final Map<String, HostState> mHosts = new HashMap<>();
+    private final ScheduledExecutorService mTimer;
+    private final Random mRandom = new Random();
+
+    private int mRetryCount;
+    private int mHedgeCount;
+
+    private DownloadScheduler(Builder builder) {
+        mClient = builder.mClient;
+        mExecutor = builder.mExecutor;
+        mMaxRequestsPerHost = builder.mMaxRequestsPerHost;
+        mMaxRetries = builder.mMaxRetries;
+        mBaseDelayMs = builder.mBaseDelayMs;
+        mMaxDelayMs = builder.mMaxDelayMs;
+        mHedgeDelayMs = builder.mHedgeDelayMs;
+
+        // it only puts retried and hedged downloads back into queues, so one thread is enough
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ImageLoader-download-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        // nobody shuts down the scheduler of an activity, its thread goes away when it's idle
+        timer.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+        mTimer = timer;
+    }
+
+    /**
+     * download request when its host has a free slot
+     * @param request
+     * @param urgent a view is waiting for it, it's queued before prefetches and may be hedged
+     * @param callback
+     */
+    public void enqueue(Request request, boolean urgent, Callback callback) {
+        Download download = new Download(request, urgent, callback);
+        synchronized (this) {
+            HostState host = getHost(download.host);
+            if (urgent) {
+                host.pending.addFirst(download);
+            } else {
+                host.pending.addLast(download);
+            }
+        }
+        pump(download.host);
+    }
+
+    /**
+     * a view starts waiting for a download which is queued as a prefetch, move it before prefetches
+     * @param request
+     * @param callback the one it's enqueued with
+     * @return whether it's still waiting in queue
+     */
+    public synchronized boolean promote(Request request, Callback callback) {
+        HostState host = mHosts.get(request.url().getHost());
+        if (null == host) return false;
+        for (Iterator<Download> iterator = host.pending.iterator(); iterator.hasNext(); ) {
+            Download download = iterator.next();
+            if (download.callback == callback) {
+                iterator.remove();
+                download.urgent = true;
+                host.pending.addFirst(download);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getRetryCount() {
+        return mRetryCount;
+    }
+
+    public synchronized int getHedgeCount() {
+        return mHedgeCount;
+    }
+
+    /**
+     * pending retries are dropped, running attempts are finished
+     */
+    public void shutdown() {
+        mTimer.shutdownNow();
+    }
+
+    /**
+     * @param retry how many times it has been retried
+     * @param maxDelayMs
+     * @param baseDelayMs
+     * @param random
+     * @return backoff with full jitter before the next retry
+     */
+    static long getBackoffDelay(int retry, long baseDelayMs, long maxDelayMs, Random random) {
+        // shift is bounded, the cap is reached long before it overflows
+        final long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(retry, 20));
+        return (long) (random.nextDouble() * (cap + 1));
+    }
+
+    /**
+     * @param code
+     * @return whether the server may answer successfully if it's asked again later
+     */
+    static boolean isTransient(int code) {
+        return 408 == code || 429 == code || code >= 500;
+    }
+
+    private HostState getHost(String host) {
+        HostState state = mHosts.get(host);
+        if (null == state) {
+            state = new HostState();
+            mHosts.put(host, state);
+        }
+        return state;
+    }
+
+    /**
+     * start pending downloads of host while it has free slots
+     */
+    private void pump(String hostName) {
+        List<Download> downloading = null;
+        boolean freed = true;
+        while (freed) {
+            List<Download> started = new ArrayList<>();
+            synchronized (this) {
+                HostState host = getHost(hostName);
+                if (null == downloading && !host.downloading.isEmpty()) {
+                    downloading = new ArrayList<>(host.downloading);
+                }
+                while (host.running < mMaxRequestsPerHost && !host.pending.isEmpty()) {
+                    Download download = host.pending.pollFirst();
+                    ++host.running;
+                    ++download.attempts;
+                    started.add(download);
+                }
+                if (0 == host.running && host.pending.isEmpty()) {
+                    mHosts.remove(hostName);
+                }
+            }
+
+            // a cancelled one gives its slot to the next one at once, callbacks are asked out of lock
+            freed = false;
+            for (Download download : started) {
+                if (download.callback.isCancelled()) {
+                    synchronized (this) {
+                        --download.attempts;
+                        download.done = true;
+                        --getHost(hostName).running;
+                    }
+                    freed = true;
+                } else {
+                    mExecutor.execute(new Attempt(download, false));
+                }
+            }
+        }
+
+        // the last waiter of a running one has left, its calls are cancelled, then they release their slots
+        if (null != downloading) {
+            for (Download download : downloading) {
+                if (download.callback.isCancelled()) {
+                    cancel(download);
+                }
+            }
+        }
+    }
+
+    /**
+     * finish download without calling back, and cancel its running calls
+     */
+    private void cancel(Download download) {
+        List<Call> calls;
+        synchronized (this) {
+            if (download.done) return;
+            download.done = true;
+            calls = new ArrayList<>(download.calls);
+        }
+        for (Call call : calls) {
+            call.cancel();
+        }
+    }
+
+    private void addCall(Download download, Call call) {
+        if (download.calls.isEmpty()) {
+            getHost(download.host).downloading.add(download);
+        }
+        download.calls.add(call);
+    }
+
+    private void removeCall(Download download, Call call) {
+        if (download.calls.remove(call) && download.calls.isEmpty()) {
+            getHost(download.host).downloading.remove(download);
+        }
+    }
+
+    /**
+     * a slot of host is free, start the next one
+     */
+    private void release(String hostName) {
+        synchronized (this) {
+            --getHost(hostName).running;
+        }
+        pump(hostName);
+    }
+
+    /**
+     * an attempt failed transiently, retry the download unless the other attempt is still running
+     * @param download
+     * @param call
+     * @param e
+     */
+    private void onAttemptFailed(final Download download, Call call, IOException e) {
+        boolean failed = false;
+        synchronized (this) {
+            removeCall(download, call);
+            --download.attempts;
+            if (!download.done && 0 == download.attempts) {
+                if (download.retries < mMaxRetries && !mTimer.isShutdown()) {
+                    final long delay = getBackoffDelay(download.retries, mBaseDelayMs, mMaxDelayMs, mRandom);
+                    ++download.retries;
+                    ++mRetryCount;
+                    download.hedged = false;
+                    mTimer.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (DownloadScheduler.this) {
+                                // it has waited for its turn, it goes first
+                                getHost(download.host).pending.addFirst(download);
+                            }
+                            pump(download.host);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } else {
+                    download.done = true;
+                    failed = true;
+                }
+            }
+        }
+        release(download.host);
+        if (failed) {
+            download.callback.onFailure(e);
+        }
+    }
+
+    /**
+     * start a hedged request if the primary one is still waiting for response and host has a free slot
+     */
+    private void hedge(Download download) {
+        synchronized (this) {
+            HostState host = getHost(download.host);
+            if (download.done || download.hedged || 1 != download.attempts
+                    || host.running >= mMaxRequestsPerHost) {
+                return;
+            }
+            download.hedged = true;
+            ++download.attempts;
+            ++host.running;
+            ++mHedgeCount;
+        }
+        mExecutor.execute(new Attempt(download, true));
+    }
+
+    /**
+     * one request of a download, it holds a slot of host until it's finished
+     */
+    private class Attempt extends LoaderExecutor.StageTask {
+        private final Download mDownload;
+        private final boolean mHedge;
+
+        Attempt(Download download, boolean hedge) {
+            mDownload = download;
+            mHedge = hedge;
+        }
+
+        @Override
+        public void run() {
+            final Download download = mDownload;
+            // nobody wants it any longer while it was queued in executor
+            if (download.callback.isCancelled()) {
+                cancel(download);
+            }
+            final Call call = mClient.newCall(download.request);
+            boolean done;
+            synchronized (DownloadScheduler.this) {
+                done = download.done;
+                if (done) {
+                    --download.attempts;
+                } else {
+                    addCall(download, call);
+                }
+            }
+            if (done) {
+                release(download.host);
+                return;
+            }
+            if (!mHedge && download.urgent && mHedgeDelayMs > 0 && !mTimer.isShutdown()) {
+                mTimer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        hedge(download);
+                    }
+                }, mHedgeDelayMs, TimeUnit.MILLISECONDS);
+            }
+
+            Response response;
+            try {
+                response = call.execute();
+            } catch (IOException e) {
+                onAttemptFailed(download, call, e);
+                return;
+            }
+            if (isTransient(response.code())) {
+                closeQuietly(response);
+                onAttemptFailed(download, call, new IOException("HTTP " + response.code() + ": "
+                        + download.request.urlString()));
+                return;
+            }
+
+            List<Call> losers;
+            synchronized (DownloadScheduler.this) {
+                removeCall(download, call);
+                --download.attempts;
+                if (download.done) {
+                    losers = null;
+                } else {
+                    download.done = true;
+                    losers = new ArrayList<>(download.calls);
+                }
+            }
+            if (null == losers) {
+                // the other attempt has won
+                closeQuietly(response);
+                release(download.host);
+                return;
+            }
+            for (Call loser : losers) {
+                loser.cancel();
+            }
+
+            // the slot is held while body is read, so connections of host are limited too
+            try {
+                download.callback.onResponse(response);
+            } catch (IOException e) {
+                download.callback.onFailure(e);
+            } finally {
+                release(download.host);
+            }
+        }
+
+        @Override
+        public void onDropped() {
+            final Download download = mDownload;
+            boolean failed = false;
+            synchronized (DownloadScheduler.this) {
+                --download.attempts;
+                if (!download.done && 0 == download.attempts) {
+                    download.done = true;
+                    failed = true;
+                }
+            }
+            release(download.host);
+            if (failed) {
+                download.callback.onFailure(new IOException("download dropped: " + download.request.urlString()));
+            }
+        }
+
+        @Override
+        public boolean isUrgent() {
+            return mDownload.urgent;
+        }
+    }
+
+    private static void closeQuietly(Response response) {
+        try {
+            response.body().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Builder of DownloadScheduler, limits and delays can be tuned.
+     */
+    public static class Builder {
+        private final OkHttpClient mClient;
+        private final Executor mExecutor;
+        private int mMaxRequestsPerHost = 4;
+        private int mMaxRetries = 3;
+        private long mBaseDelayMs = 500;
+        private long mMaxDelayMs = 8000;
+        private long mHedgeDelayMs = 0;
+
+        /**
+         * @param client
+         * @param executor attempts run on it, they block on network
+         */
+        public Builder(OkHttpClient client, Executor executor) {
+            mClient = client;
+            mExecutor = executor;
+        }
+
+        public Builder setMaxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost <= 0) {
+                throw new IllegalArgumentException("maxRequestsPerHost must be positive");
+            }
+            mMaxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * @param maxRetries
+         * @param baseDelayMs delay before the first retry at most, it's doubled for each retry
+         * @param maxDelayMs
+         * @return
+         */
+        public Builder setRetry(int maxRetries, long baseDelayMs, long maxDelayMs) {
+            if (maxRetries < 0 || baseDelayMs < 0 || maxDelayMs < baseDelayMs) {
+                throw new IllegalArgumentException("invalid retry policy");
+            }
+            mMaxRetries = maxRetries;
+            mBaseDelayMs = baseDelayMs;
+            mMaxDelayMs = maxDelayMs;
+            return this;
+        }
+
+        /**
+         * @param hedgeDelayMs an urgent download without response after it is requested again, 0 means never
+         * @return
+         */
+        public Builder setHedgeDelay(long hedgeDelayMs) {
+            if (hedgeDelayMs < 0) {
+                throw new IllegalArgumentException("hedgeDelayMs must not be negative");
+            }
+            mHedgeDelayMs = hedgeDelayMs;
+            return this;
+        }
+
+        public DownloadScheduler build() {
+            return new DownloadScheduler(this);
+        }
+    }
+}
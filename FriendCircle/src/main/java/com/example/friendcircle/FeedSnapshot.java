@@ -0,0 +1,308 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+import com.example.friendcircle.bean.UserBean;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The last user and tweets list loaded from network, persisted in a compact binary file,
+ * so they can be shown at launch before the network answers.
+ *
+ * The file is: magic, version, string table, then user and tweets. Every string is stored only once
+ * in the string table as length-prefixed UTF-8, beans refer to them by index (-1 is null).
+ * Lists are prefixed by size (-1 is null). It's read through a memory-mapped buffer without parsing text.
+ */
+public class FeedSnapshot {
+    private static final int MAGIC = 0x46435331;    // "FCS1"
+    private static final int VERSION = 1;
+    private static final int NULL = -1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final UserBean mUser;
+    private final TweetFeed mTweetList;
+
+    private FeedSnapshot(UserBean user, TweetFeed tweets) {
+        mUser = user;
+        mTweetList = tweets;
+    }
+
+    public UserBean getmUser() {
+        return mUser;
+    }
+
+    public TweetFeed getmTweetList() {
+        return mTweetList;
+    }
+
+    /**
+     * write snapshot into a temp file then rename it, a broken file is never left when it fails
+     * @param file
+     * @param user
+     * @param tweets
+     * @throws IOException
+     */
+    public static void write(File file, UserBean user, List<TweetBean> tweets) throws IOException {
+        Writer writer = new Writer();
+        writer.writeUser(user);
+        writer.writeTweets(tweets);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(writer.mStrings.size());
+            for (byte[] bytes : writer.mStrings) {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            writer.mBody.writeTo(out);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("rename snapshot failed");
+        }
+    }
+
+    /**
+     * @param file
+     * @return null if there is no snapshot
+     * @throws IOException if the snapshot is broken or of another version
+     */
+    public static FeedSnapshot read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Reader(buffer).read();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("broken snapshot", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * writes beans into body, and collects strings into string table
+     */
+    private static class Writer {
+        private final List<byte[]> mStrings = new ArrayList<>();
+        private final Map<String, Integer> mStringIndexes = new HashMap<>();
+        private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+        private final DataOutputStream mOut = new DataOutputStream(mBody);
+
+        void writeString(String s) throws IOException {
+            if (null == s) {
+                mOut.writeInt(NULL);
+                return;
+            }
+            Integer index = mStringIndexes.get(s);
+            if (null == index) {
+                index = mStrings.size();
+                mStrings.add(s.getBytes(UTF_8));
+                mStringIndexes.put(s, index);
+            }
+            mOut.writeInt(index);
+        }
+
+        void writeUser(UserBean user) throws IOException {
+            mOut.writeBoolean(null != user);
+            if (null == user) return;
+            writeString(user.getProfileimage());
+            writeString(user.getAvatar());
+            writeString(user.getNick());
+            writeString(user.getUsername());
+        }
+
+        void writeSender(TweetBean.SenderBean sender) throws IOException {
+            mOut.writeBoolean(null != sender);
+            if (null == sender) return;
+            writeString(sender.getUsername());
+            writeString(sender.getNick());
+            writeString(sender.getAvatar());
+        }
+
+        void writeTweets(List<TweetBean> tweets) throws IOException {
+            mOut.writeInt(null == tweets ? NULL : tweets.size());
+            if (null == tweets) return;
+            for (TweetBean tweet : tweets) {
+                mOut.writeBoolean(null != tweet);
+                if (null == tweet) continue;
+                writeString(tweet.getContent());
+                writeSender(tweet.getSender());
+
+                List<TweetBean.ImagesBean> images = tweet.getImages();
+                mOut.writeInt(null == images ? NULL : images.size());
+                if (null != images) {
+                    for (TweetBean.ImagesBean image : images) {
+                        mOut.writeBoolean(null != image);
+                        if (null != image) {
+                            writeString(image.getUrl());
+                        }
+                    }
+                }
+
+                List<TweetBean.CommentBean> comments = tweet.getComments();
+                mOut.writeInt(null == comments ? NULL : comments.size());
+                if (null != comments) {
+                    for (TweetBean.CommentBean comment : comments) {
+                        mOut.writeBoolean(null != comment);
+                        if (null != comment) {
+                            writeString(comment.getContent());
+                            writeSender(comment.getSender());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * reads string table then beans from a buffer
+     */
+    private static class Reader {
+        private final MappedByteBuffer mBuffer;
+        private String[] mStrings;
+
+        Reader(MappedByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        FeedSnapshot read() throws IOException {
+            if (MAGIC != mBuffer.getInt() || VERSION != mBuffer.getInt()) {
+                throw new IOException("unknown snapshot format");
+            }
+
+            // copy string table out of mapped buffer at once, strings are decoded from it
+            final int count = readCount(false);
+            mStrings = new String[count];
+            byte[] bytes = new byte[0];
+            for (int i = 0; i < count; ++i) {
+                int length = readCount(false);
+                if (bytes.length < length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                mBuffer.get(bytes, 0, length);
+                mStrings[i] = new String(bytes, 0, length, UTF_8);
+            }
+
+            UserBean user = readUser();
+            TweetFeed tweets = readTweets();
+            return new FeedSnapshot(user, tweets);
+        }
+
+        /**
+         * Read size of a list or a string. Every item takes a byte at least, so a broken count
+         * is never allocated before it's rejected.
+         * @param nullable whether it can be NULL
+         * @return count, or NULL if nullable
+         * @throws IOException if it's negative or larger than the rest of the snapshot
+         */
+        int readCount(boolean nullable) throws IOException {
+            final int count = mBuffer.getInt();
+            if (nullable && NULL == count) return NULL;
+            if (count < 0 || count > mBuffer.remaining()) {
+                throw new IOException("broken snapshot");
+            }
+            return count;
+        }
+
+        String readString() {
+            int index = mBuffer.getInt();
+            return NULL == index ? null : mStrings[index];
+        }
+
+        boolean readBoolean() {
+            return 0 != mBuffer.get();
+        }
+
+        UserBean readUser() {
+            if (!readBoolean()) return null;
+            UserBean user = new UserBean();
+            user.setProfileimage(ModelInterner.getDefault().internUrl(readString()));
+            user.setAvatar(ModelInterner.getDefault().internUrl(readString()));
+            user.setNick(readString());
+            user.setUsername(readString());
+            return user;
+        }
+
+        TweetBean.SenderBean readSender() {
+            if (!readBoolean()) return null;
+            final String username = readString();
+            final String nick = readString();
+            final String avatar = readString();
+            // shared with the ones parsed from network
+            return ModelInterner.getDefault().sender(username, nick, avatar);
+        }
+
+        TweetFeed readTweets() throws IOException {
+            final int size = readCount(true);
+            if (NULL == size) return null;
+            TweetFeed.Builder tweets = new TweetFeed.Builder(size);
+            // the same occurrences as the feed was parsed, it's in the same order
+            JsonParserUtil.OccurrenceCounter occurrences = new JsonParserUtil.OccurrenceCounter();
+            for (int i = 0; i < size; ++i) {
+                if (!readBoolean()) {
+                    tweets.add(null);
+                    continue;
+                }
+                TweetBean tweet = new TweetBean();
+                tweet.setContent(readString());
+                tweet.setSender(readSender());
+
+                final int imageCount = readCount(true);
+                if (NULL != imageCount) {
+                    List<TweetBean.ImagesBean> images = new ArrayList<>(imageCount);
+                    for (int j = 0; j < imageCount; ++j) {
+                        TweetBean.ImagesBean image = null;
+                        if (readBoolean()) {
+                            image = new TweetBean.ImagesBean();
+                            image.setUrl(ModelInterner.getDefault().internUrl(readString()));
+                        }
+                        images.add(image);
+                    }
+                    tweet.setImages(images);
+                }
+
+                final int commentCount = readCount(true);
+                if (NULL != commentCount) {
+                    List<TweetBean.CommentBean> comments = new ArrayList<>(commentCount);
+                    for (int j = 0; j < commentCount; ++j) {
+                        TweetBean.CommentBean comment = null;
+                        if (readBoolean()) {
+                            comment = new TweetBean.CommentBean();
+                            comment.setContent(readString());
+                            comment.setSender(readSender());
+                        }
+                        comments.add(comment);
+                    }
+                    tweet.setComments(comments);
+                }
+                occurrences.count(tweet);
+                tweets.add(tweet);
+            }
+            return tweets.build();
+        }
+    }
+}
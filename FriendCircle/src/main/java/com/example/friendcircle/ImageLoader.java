@@ -6,39 +6,55 @@ import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.os.AsyncTask;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
 import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.os.StatFs;
-import android.support.v4.util.LruCache;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.View;
 import android.view.WindowManager;
 import android.widget.ImageView;
 
 import com.example.friendcircle.bean.TweetBean;
 import com.example.friendcircle.bean.UserBean;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
 import com.squareup.okhttp.internal.DiskLruCache;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.LinkedList;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -48,15 +64,65 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class ImageLoader {
     public static final String TAG = "ImageLoader";
     private OkHttpClient mOkHttpClient;
+    // user and tweets list are revalidated with server, they are not parsed again when server answers 304
+    private RevalidatingFetcher mFetcher;
+    private static final int HTTP_CACHE_SIZE = 5*1024*1024;
+    // images are downloaded through it, requests of each host are limited, retried and hedged
+    private DownloadScheduler mDownloadScheduler;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+    // idle connections kept alive for reuse, a few image hosts and the Json server
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_DURATION_MS = 5*60*1000;
+    // a visible image without response after it is requested again
+    private static final long HEDGE_DELAY_MS = 1500;
+    // the last user and tweets list loaded from network, they are shown at launch before network answers
+    private File mSnapshotFile;
     private Context mContext;
-    private LinkedList<TweetBean> mTweetList;   // tweets list
+    private TweetFeed mTweetList;   // tweets list
     private UserBean mUser;
 
     private static final int DISK_CACHE_SIZE = 50*1024*1024;
-    private LruCache<String, Bitmap> mMemoryCache;
+    // bounds of image are parsed from its header of this size while it's being downloaded
+    private static final int IMAGE_HEADER_SIZE = 64*1024;
+    // max bytes moved from network to disk cache each time
+    private static final long TRANSFER_SIZE = 64*1024;
+    private BitmapMemoryCache mMemoryCache;
+    private BitmapPool mBitmapPool;
     private DiskLruCache mDiskLruCache;
 
-    public LinkedList<TweetBean> getmTweetList() {
+    // disk cache of downsampled variants, keyed by url and request size, so they need not be decoded from originals
+    private static final int VARIANT_DISK_CACHE_SIZE = 20*1024*1024;
+    private static final int VARIANT_QUALITY = 90;
+    private static final int VARIANT_BUFFER_SIZE = 16*1024;
+    private DiskLruCache mVariantDiskCache;
+
+    // all work of loading runs on it, except the work in UI thread
+    private LoaderExecutor mExecutor;
+
+    // loads which are running now, requests with the same key share one of them
+    private final ConcurrentHashMap<String, LoadJob> mInFlightLoads = new ConcurrentHashMap<>();
+
+    // prefetching requests in current prefetch window, key of memory cache -> request. Only used in UI thread
+    private final Map<String, PrefetchRequest> mPrefetchRequests = new HashMap<>();
+
+    // fetching of user and tweets list started last, a former one is cancelled by a newer one. Guarded by this
+    private FetchDataJob mFetchJob;
+    private int mFetchGeneration;
+
+    // loader is paused while list is flinging, images are only got from memory cache then
+    private boolean mPaused;
+    // bind requests which are not started while paused, they are started on resume if views still want them.
+    // Only used in UI thread
+    private final Map<ImageView, BindRequest> mPausedRequests = new LinkedHashMap<>();
+
+    // decode profiles of images shown in list, by their roles
+    private final DecodeProfile mProfileImageProfile;
+    private final DecodeProfile mUserAvatarProfile;
+    private final DecodeProfile mSenderAvatarProfile;
+    private final DecodeProfile mGridImageProfile;
+    private final DecodeProfile mSingleImageProfile;
+
+    public TweetFeed getmTweetList() {
         return mTweetList;
     }
 
@@ -64,36 +130,74 @@ public class ImageLoader {
         return mUser;
     }
 
-    public LruCache<String, Bitmap> getmMemoryCache() {
+    public BitmapMemoryCache getmMemoryCache() {
         return mMemoryCache;
     }
 
+    public DecodeProfile getmProfileImageProfile() {
+        return mProfileImageProfile;
+    }
+
+    public DecodeProfile getmUserAvatarProfile() {
+        return mUserAvatarProfile;
+    }
+
+    public DecodeProfile getmSenderAvatarProfile() {
+        return mSenderAvatarProfile;
+    }
+
+    public DecodeProfile getmGridImageProfile() {
+        return mGridImageProfile;
+    }
+
+    public DecodeProfile getmSingleImageProfile() {
+        return mSingleImageProfile;
+    }
+
+    /**
+     * bitmap pool for decoding, its hit/miss counts show how many bitmap allocations are saved
+     * @return
+     */
+    public BitmapPool getmBitmapPool() {
+        return mBitmapPool;
+    }
+
     /**
-     * callback after load-all action done, it runs on UI thread
+     * callback after user and tweets list are loaded, it runs on UI thread.
+     * Tweets are streamed by onTweetsLoaded in batches while the feed is being downloaded,
+     * then onLoadDone or onLoadFailure ends the load.
+     * Each load has the generation returned by startFetchData, callbacks of a load replaced by a newer one
+     * are never called.
+     * Images are not waited for, they are prefetched by updatePrefetchWindow or loaded when bound.
       */
     private LoaderCallBack mLoaderCallBack;
     public interface LoaderCallBack {
-        void onLoadDone(final ImageLoader imageLoader);
-        void onLoadFailure(final ImageLoader imageLoader);
+        /**
+         * @param imageLoader
+         * @param generation generation of the load
+         * @param tweets valid tweets parsed since the former batch
+         * @param isFirstBatch whether it's the first batch of this load, the former tweets list should be replaced
+         */
+        void onTweetsLoaded(final ImageLoader imageLoader, final int generation, final List<TweetBean> tweets,
+                            final boolean isFirstBatch);
+        void onLoadDone(final ImageLoader imageLoader, final int generation);
+        void onLoadFailure(final ImageLoader imageLoader, final int generation);
     }
 
-    //Indicates whether all tasks of getting images have finished, when taskType is TYPE_GET_IMAGES
-    private final AtomicInteger mCount = new AtomicInteger(0);
-    public class RunnableTask implements Runnable {
-        public static final int TYPE_GET_USER_AND_TWEETS_LIST = 0;
-        public static final int TYPE_GET_IMAGES = 1;   // load all images
+    // tweets of the first batch fill the first screen, the following batches are larger
+    private static final int FIRST_TWEETS_BATCH_SIZE = TweetListAdapter.LOAD_TWEETS_NUM_EACH_TIME;
+    private static final int TWEETS_BATCH_SIZE = 4 * TweetListAdapter.LOAD_TWEETS_NUM_EACH_TIME;
+
+    public class RunnableTask extends LoaderExecutor.StageTask {
+        public static final int TYPE_GET_USER = 0;
+        public static final int TYPE_GET_TWEETS_LIST = 1;
 
-        private int mTaskType = TYPE_GET_IMAGES;
+        private int mTaskType = TYPE_GET_USER;
         private String mUrl;
-        private String extra;
-        private int mRequestWidth;   // Bitmap decode width
-        private int mRequestHeight;  // Bitmap decode height
+        private FetchDataJob mJob;
 
         public RunnableTask(int requestType) {
             mTaskType = requestType;
-            if (TYPE_GET_IMAGES == mTaskType) {
-                mCount.getAndIncrement();
-            }
         }
 
         public RunnableTask setUrl(String url) {
@@ -101,49 +205,186 @@ public class ImageLoader {
             return this;
         }
 
-        public RunnableTask setExtra(String extra) {
-            this.extra = extra;
+        public RunnableTask setJob(FetchDataJob job) {
+            this.mJob = job;
             return this;
         }
 
-        public RunnableTask setRequestSize(int requestWidth, int requestHeight) {
-            this.mRequestWidth = requestWidth;
-            this.mRequestHeight = requestHeight;
-            return this;
+        @Override
+        public void run() {
+            if (TYPE_GET_USER == mTaskType) {
+                if (loadUser(mUrl, mJob)) {
+                    mJob.onUserLoaded();
+                } else {
+                    mJob.fail();
+                }
+            } else if (TYPE_GET_TWEETS_LIST == mTaskType) {
+                if (loadTweetsList(mUrl, mJob)) {
+                    mJob.onTweetsListLoaded();
+                } else {
+                    mJob.fail();
+                }
+            }
         }
 
         @Override
-        public void run() {
-            if (TYPE_GET_USER_AND_TWEETS_LIST == mTaskType) {
-                // When user and tweets list downloaded successfully, then load images.
-                if (loadUser(mUrl) && loadTweetsList(extra)) {
-                    fetchAllImages();
+        public void onDropped() {
+            mJob.fail();
+        }
+
+        @Override
+        public boolean isUrgent() {
+            // user is waiting for it
+            return true;
+        }
+    }
+
+    /**
+     * Fetching of user and tweets list, they are requested at the same time and joined here.
+     * User's images are loaded as soon as user arrives, they are always in the first screen.
+     * Tweets batches are held until user arrives, so the list is shown with its header.
+     * The load fails as soon as either request fails, and the other request is cancelled.
+     * It's cancelled silently when a newer one starts.
+     */
+    private class FetchDataJob {
+        final int generation;
+        private final AtomicInteger mPending = new AtomicInteger(2);
+        private final AtomicBoolean mFailed = new AtomicBoolean();
+        // user or tweets list is not the same as the one parsed before, snapshot should be saved again
+        private volatile boolean mModified;
+
+        // guarded by this
+        private final List<Call> mCalls = new ArrayList<>(2);
+        private boolean mUserLoaded;
+        private List<TweetBean> mHeldTweets;
+        private boolean mIsFirstBatch = true;
+
+        FetchDataJob(int generation) {
+            this.generation = generation;
+        }
+
+        /**
+         * @param call
+         * @return false if the job has failed, the call should not be executed
+         */
+        synchronized boolean addCall(Call call) {
+            if (mFailed.get()) return false;
+            mCalls.add(call);
+            return true;
+        }
+
+        void onUserLoaded() {
+            prefetchUserImages();
+            synchronized (this) {
+                mUserLoaded = true;
+                if (null != mHeldTweets && !mFailed.get()) {
+                    notifyTweetsLoaded(this, mHeldTweets, mIsFirstBatch);
+                    mIsFirstBatch = false;
+                }
+                mHeldTweets = null;
+            }
+            finishOne();
+        }
+
+        synchronized void onTweetsBatch(List<TweetBean> tweets) {
+            if (mFailed.get()) return;
+            if (!mUserLoaded) {
+                // hold them in one batch until user arrives
+                if (null == mHeldTweets) {
+                    mHeldTweets = new ArrayList<>(tweets);
                 } else {
-                    if (null != mLoaderCallBack) {
-                        mMainHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                mLoaderCallBack.onLoadFailure(ImageLoader.this);
-                            }
-                        });
+                    mHeldTweets.addAll(tweets);
+                }
+                return;
+            }
+            notifyTweetsLoaded(this, tweets, mIsFirstBatch);
+            mIsFirstBatch = false;
+        }
+
+        void onTweetsListLoaded() {
+            finishOne();
+        }
+
+        void fail() {
+            if (cancel()) {
+                notifyLoadFailure(this);
+            }
+        }
+
+        /**
+         * stop the job without notifying, its calls are cancelled
+         * @return false if it has stopped already
+         */
+        boolean cancel() {
+            if (!mFailed.compareAndSet(false, true)) return false;
+
+            synchronized (this) {
+                for (Call call : mCalls) {
+                    call.cancel();
+                }
+                mHeldTweets = null;
+            }
+            return true;
+        }
+
+        void setModified() {
+            mModified = true;
+        }
+
+        private void finishOne() {
+            if (0 == mPending.decrementAndGet() && !mFailed.get()) {
+                notifyLoadDone(this);
+                if (mModified) {
+                    saveSnapshot();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param job
+     * @return whether it's the latest fetching, callbacks of a former one are dropped
+     */
+    private synchronized boolean isCurrentFetch(FetchDataJob job) {
+        return job == mFetchJob;
+    }
+
+    private void notifyLoadFailure(final FetchDataJob job) {
+        if (null != mLoaderCallBack) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCurrentFetch(job)) {
+                        mLoaderCallBack.onLoadFailure(ImageLoader.this, job.generation);
                     }
                 }
-            } else if (TYPE_GET_IMAGES == mTaskType) {
-                loadBitmap(mUrl, mRequestWidth, mRequestHeight);
-
-                // when mCount equals 0, it indicates that all tasks of getting image have been done, now we should notify UI.
-                // All images have been loaded, we should notify UI.
-                if (0 == mCount.decrementAndGet()) {
-                    if(null != mLoaderCallBack) {
-                        mMainHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                mLoaderCallBack.onLoadDone(ImageLoader.this);
-                            }
-                        });
+            });
+        }
+    }
+
+    private void notifyTweetsLoaded(final FetchDataJob job, final List<TweetBean> tweets, final boolean isFirstBatch) {
+        if (null != mLoaderCallBack) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCurrentFetch(job)) {
+                        mLoaderCallBack.onTweetsLoaded(ImageLoader.this, job.generation, tweets, isFirstBatch);
                     }
                 }
-            }
+            });
+        }
+    }
+
+    private void notifyLoadDone(final FetchDataJob job) {
+        if (null != mLoaderCallBack) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCurrentFetch(job)) {
+                        mLoaderCallBack.onLoadDone(ImageLoader.this, job.generation);
+                    }
+                }
+            });
         }
     }
 
@@ -155,47 +396,183 @@ public class ImageLoader {
         mOkHttpClient.setConnectTimeout(5, TimeUnit.SECONDS);
         mOkHttpClient.setReadTimeout(10, TimeUnit.SECONDS);
         mOkHttpClient.setWriteTimeout(10, TimeUnit.SECONDS);
+        mOkHttpClient.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS));
+        // HTTP cache keeps Json responses with their ETag and Last-Modified, images are not stored in it
+        try {
+            mOkHttpClient.setCache(new Cache(getDiskCacheDir(mContext, "http"), HTTP_CACHE_SIZE));
+        } catch (IOException e) {
+            Log.w(TAG, "create http cache failed");
+        }
+        mFetcher = new RevalidatingFetcher(mOkHttpClient);
+        mSnapshotFile = new File(mContext.getCacheDir(), "feed.snapshot");
+
+        mExecutor = new LoaderExecutor.Builder()
+                // downloads wait for their hosts in scheduler, so threads are only taken by running requests
+                .setStage(LoaderExecutor.STAGE_NETWORK, 8, 128)
+                .build();
+        mDownloadScheduler = new DownloadScheduler.Builder(mOkHttpClient, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mExecutor.execute(LoaderExecutor.STAGE_NETWORK, command);
+            }
+        })
+                .setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST)
+                .setHedgeDelay(HEDGE_DELAY_MS)
+                .build();
+
+        // avatars may have alpha, so they keep ARGB_8888; photos are opaque, RGB_565 is enough for them
+        final int screenWidth = ((WindowManager)mContext.getSystemService(Context.WINDOW_SERVICE))
+                .getDefaultDisplay().getWidth();
+        Resources res = mContext.getResources();
+        final int userAvatarSize = res.getDimensionPixelOffset(R.dimen.user_avatar_size);
+        final int senderAvatarSize = res.getDimensionPixelOffset(R.dimen.sender_avatar_size);
+        mProfileImageProfile = new DecodeProfile.Builder(DecodeProfile.NAME_PROFILE)
+                .setConfig(Bitmap.Config.RGB_565)
+                .setTargetSize(screenWidth, res.getDimensionPixelOffset(R.dimen.profile_height))
+                .build();
+        mUserAvatarProfile = new DecodeProfile.Builder(DecodeProfile.NAME_AVATAR)
+                .setTargetSize(userAvatarSize, userAvatarSize)
+                .build();
+        mSenderAvatarProfile = new DecodeProfile.Builder(DecodeProfile.NAME_AVATAR)
+                .setTargetSize(senderAvatarSize, senderAvatarSize)
+                .build();
+        // grid images are shown in square cells of NineGridView with CENTER_CROP, crop them at decode time
+        mGridImageProfile = new DecodeProfile.Builder(DecodeProfile.NAME_GRID)
+                .setConfig(Bitmap.Config.RGB_565)
+                .setTargetSize(screenWidth / 3, screenWidth / 3)
+                .setCenterCrop(true)
+                .build();
+        // a single image is shown within max size with its aspect ratio, a tall or wide one needn't fill it
+        mSingleImageProfile = new DecodeProfile.Builder(DecodeProfile.NAME_SINGLE)
+                .setConfig(Bitmap.Config.RGB_565)
+                .setMaxSize(res.getDimensionPixelOffset(R.dimen.max_width_single_image),
+                        res.getDimensionPixelOffset(R.dimen.max_height_single_image))
+                .build();
 
         // create memory cache for bitmap
         int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
         int cacheSize = maxMemory / 4;
-        mMemoryCache = new LruCache<String, Bitmap>(cacheSize) {
-            @Override
-            protected int sizeOf(String key, Bitmap bitmap) {
-                return bitmap.getRowBytes() * bitmap.getHeight() / 1024;
-            }
-        };
+        // bitmaps evicted from memory cache are kept in pool to be reused by decoding, the pool is 1/4 of memory cache
+        mBitmapPool = new BitmapPool(cacheSize / 4 * 1024);
+        mMemoryCache = new BitmapMemoryCache(cacheSize, mBitmapPool);
 
-        // open disk cache for bitmap
-        openDiskLruCache();
+        // open disk cache for bitmap, originals and downsampled variants are cached separately
+        mDiskLruCache = openDiskLruCache("images", DISK_CACHE_SIZE);
+        mVariantDiskCache = openDiskLruCache("variants", VARIANT_DISK_CACHE_SIZE);
     }
 
     /**
-     * Start fetching data
+     * Start fetching data, the former fetching is cancelled and its callbacks are never called
      * @param userUrl
      * @param tweetListUrl
+     * @return generation of this fetching, it's given to callbacks
      */
-    public synchronized void startFetchData(String userUrl, String tweetListUrl) {
-           AsyncTask.THREAD_POOL_EXECUTOR.execute(new RunnableTask(RunnableTask.TYPE_GET_USER_AND_TWEETS_LIST)
+    public synchronized int startFetchData(String userUrl, String tweetListUrl) {
+        if (null != mFetchJob) {
+            mFetchJob.cancel();
+        }
+        FetchDataJob job = new FetchDataJob(++mFetchGeneration);
+        mFetchJob = job;
+
+        // request both at once, so time to first content is one round-trip instead of two
+        mExecutor.execute(LoaderExecutor.STAGE_NETWORK, new RunnableTask(RunnableTask.TYPE_GET_USER)
                 .setUrl(userUrl)
-                .setExtra(tweetListUrl));
+                .setJob(job));
+        mExecutor.execute(LoaderExecutor.STAGE_NETWORK, new RunnableTask(RunnableTask.TYPE_GET_TWEETS_LIST)
+                .setUrl(tweetListUrl)
+                .setJob(job));
+        return job.generation;
+    }
+
+    /**
+     * callback of loading a page of tweets, called on UI thread
+     */
+    public interface TweetsPageCallBack {
+        void onTweetsPageLoaded(JsonParserUtil.TweetsPage page);
+
+        void onTweetsPageFailed();
+    }
+
+    /**
+     * load a page of tweets in sub-thread, the page is parsed again even if it's not modified,
+     * the pages are not kept here so that the memory of feed is limited by who shows them
+     * @param url url of page
+     * @param callBack
+     */
+    public void loadTweetsPage(final String url, final TweetsPageCallBack callBack) {
+        mExecutor.execute(LoaderExecutor.STAGE_NETWORK, new LoaderExecutor.StageTask() {
+            @Override
+            public void run() {
+                JsonParserUtil.TweetsPage page = null;
+                Reader reader = null;
+                try {
+                    Response response = mFetcher.newCall(url).execute();
+                    if (response.isSuccessful()) {
+                        reader = response.body().charStream();
+                        page = JsonParserUtil.parseTweetsPageFromJson(reader,
+                                TWEETS_BATCH_SIZE, TWEETS_BATCH_SIZE, new JsonParserUtil.TweetsBatchListener() {
+                                    @Override
+                                    public void onTweetsBatch(List<TweetBean> tweets) {
+                                        // page is shown at once when it's loaded
+                                    }
+                                });
+                    } else {
+                        response.body().close();
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "load Tweets page failed");
+                } finally {
+                    closeQuietly(reader);
+                }
+                notifyTweetsPage(page, callBack);
+            }
+
+            @Override
+            public void onDropped() {
+                notifyTweetsPage(null, callBack);
+            }
+        });
+    }
+
+    private void notifyTweetsPage(final JsonParserUtil.TweetsPage page, final TweetsPageCallBack callBack) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (null != page) {
+                    callBack.onTweetsPageLoaded(page);
+                } else {
+                    callBack.onTweetsPageFailed();
+                }
+            }
+        });
     }
 
     /**
      * @param url
+     * @param job
      * @return  whether the loaded user is valid
      */
-    private boolean loadUser(String url) {
+    private boolean loadUser(String url, FetchDataJob job) {
         try {
-            // get user from server;
-            final Request getUserReq = new Request.Builder().url(url).build();
-            Response response = mOkHttpClient.newCall(getUserReq).execute();
-
-            // if download successfully, then parse it as JSON
-            if (response.isSuccessful()) {
-                UserBean user = JsonParserUtil.parseUserFromJson(response.body().string());
+            // get user from server, the user parsed before is reused if it's not modified
+            Call call = mFetcher.newCall(url);
+            if (!job.addCall(call)) return false;
+            RevalidatingFetcher.Result<UserBean> result = mFetcher.execute(call, url,
+                    new RevalidatingFetcher.Parser<UserBean>() {
+                        @Override
+                        public UserBean parse(Response response) throws IOException {
+                            return JsonParserUtil.parseUserFromJson(response.body().string());
+                        }
+                    });
+
+            if (null != result && null != result.model) {
+                if (!result.reused) {
+                    job.setModified();
+                }
                 synchronized (ImageLoader.this) {
-                    mUser = user;
+                    // a newer fetching has started, it's not wanted
+                    if (job != mFetchJob) return false;
+                    mUser = result.model;
                     return mUser.isValid();
                 }
             }
@@ -207,18 +584,46 @@ public class ImageLoader {
 
     /**
      * @param url
+     * @param job tweets batches are given to it while they are being parsed
      * @return whether load tweets list successfully
      */
-    private boolean loadTweetsList(String url) {
+    private boolean loadTweetsList(String url, final FetchDataJob job) {
         try {
             // get tweets list from server
-            final Request getTweetListReq = new Request.Builder().url(url).build();
-            Response response = mOkHttpClient.newCall(getTweetListReq).execute();
-            // if download successfully, then parse it as JSON
-            if (response.isSuccessful()) {
-                LinkedList<TweetBean> tweets = JsonParserUtil.filterInvalidTweet(JsonParserUtil.parseTweetFromJson(response.body().string()));
+            Call call = mFetcher.newCall(url);
+            if (!job.addCall(call)) return false;
+            RevalidatingFetcher.Result<TweetFeed> result = mFetcher.execute(call, url,
+                    new RevalidatingFetcher.Parser<TweetFeed>() {
+                        @Override
+                        public TweetFeed parse(Response response) throws IOException {
+                            // parse it as JSON while it's being downloaded
+                            Reader reader = response.body().charStream();
+                            try {
+                                return JsonParserUtil.parseTweetsFromJson(reader,
+                                        FIRST_TWEETS_BATCH_SIZE, TWEETS_BATCH_SIZE,
+                                        new JsonParserUtil.TweetsBatchListener() {
+                                            @Override
+                                            public void onTweetsBatch(List<TweetBean> tweets) {
+                                                job.onTweetsBatch(tweets);
+                                            }
+                                        });
+                            } finally {
+                                closeQuietly(reader);
+                            }
+                        }
+                    });
+
+            if (null != result && null != result.model) {
+                // not modified, the tweets parsed before are shown at once
+                if (result.reused) {
+                    job.onTweetsBatch(result.model);
+                } else {
+                    job.setModified();
+                }
                 synchronized (ImageLoader.this) {
-                    mTweetList = tweets;
+                    // a newer fetching has started, it's not wanted
+                    if (job != mFetchJob) return false;
+                    mTweetList = result.model;
                 }
                 return true;
             }
@@ -229,99 +634,303 @@ public class ImageLoader {
     }
 
     /**
-     * Fetch all images for user and tweets list.
-     * If it exists in disk cache, load it into memory directly,
-     * otherwise, download from network into disk cache and load it into memory.
-     * Here we decode bitmaps with used size
+     * Load snapshot of the last user and tweets list synchronously, it's fast enough to be called in UI thread
+     * at launch. Profile and avatar of user are prefetched.
+     * @return whether user and tweets list are loaded from snapshot
      */
-    private synchronized void fetchAllImages() {
-        int screenWidth = ((WindowManager)mContext.getSystemService(Context.WINDOW_SERVICE))
-                .getDefaultDisplay().getWidth();
-        Resources res = mContext.getResources();
+    public boolean loadSnapshot() {
+        FeedSnapshot snapshot;
+        try {
+            snapshot = FeedSnapshot.read(mSnapshotFile);
+        } catch (IOException e) {
+            Log.w(TAG, "load snapshot failed");
+            mSnapshotFile.delete();
+            return false;
+        }
+        if (null == snapshot || null == snapshot.getmUser() || null == snapshot.getmTweetList()) {
+            return false;
+        }
 
-        // if User is valid, load its profile and avatar
-        if (mUser.isValid()) {
-            if (!TextUtils.isEmpty(mUser.getProfileimage())) {
-                AsyncTask.THREAD_POOL_EXECUTOR.execute(new RunnableTask(RunnableTask.TYPE_GET_IMAGES)
-                        .setUrl(mUser.getProfileimage())
-                        .setRequestSize(screenWidth, res.getDimensionPixelOffset(R.dimen.profile_height)));
-            }
-            if (!TextUtils.isEmpty(mUser.getAvatar())) {
-                AsyncTask.THREAD_POOL_EXECUTOR.execute(new RunnableTask(RunnableTask.TYPE_GET_IMAGES)
-                        .setUrl(mUser.getAvatar())
-                        .setRequestSize(res.getDimensionPixelOffset(R.dimen.user_avatar_size),
-                                res.getDimensionPixelOffset(R.dimen.user_avatar_size)));
-            }
-        }
-
-        // load images for tweets list
-        for (TweetBean tweetBean : mTweetList) {
-            String url = tweetBean.getSender().getAvatar();
-            if (!TextUtils.isEmpty(url)) {
-                AsyncTask.THREAD_POOL_EXECUTOR.execute(new RunnableTask(RunnableTask.TYPE_GET_IMAGES)
-                        .setUrl(url)
-                        .setRequestSize(res.getDimensionPixelOffset(R.dimen.sender_avatar_size),
-                                res.getDimensionPixelOffset(R.dimen.sender_avatar_size)));
-            }
-            if (null == tweetBean.getImages()) {continue;}
-            for (TweetBean.ImagesBean imagesBean : tweetBean.getImages()) {
-                if (TextUtils.isEmpty(imagesBean.getUrl())) continue;
-
-                // when a single image
-                if (1 == tweetBean.getImages().size()) {
-                    AsyncTask.THREAD_POOL_EXECUTOR.execute(new RunnableTask(RunnableTask.TYPE_GET_IMAGES)
-                            .setUrl(imagesBean.getUrl())
-                            .setRequestSize(res.getDimensionPixelOffset(R.dimen.max_width_single_image),
-                                    res.getDimensionPixelOffset(R.dimen.max_height_single_image)));
-                } else {
-                    // when multi images. now just use 1/3 of screen width
-                    AsyncTask.THREAD_POOL_EXECUTOR.execute(new RunnableTask(RunnableTask.TYPE_GET_IMAGES)
-                            .setUrl(imagesBean.getUrl())
-                            .setRequestSize(screenWidth/3,screenWidth/3));
+        synchronized (this) {
+            mUser = snapshot.getmUser();
+            mTweetList = snapshot.getmTweetList();
+        }
+        prefetchUserImages();
+        return true;
+    }
+
+    /**
+     * Save current user and tweets list as snapshot, called in sub-thread after they are loaded.
+     */
+    private void saveSnapshot() {
+        UserBean user;
+        TweetFeed tweets;
+        synchronized (this) {
+            user = mUser;
+            tweets = mTweetList;
+        }
+        try {
+            FeedSnapshot.write(mSnapshotFile, user, tweets);
+        } catch (IOException e) {
+            Log.w(TAG, "save snapshot failed");
+        }
+    }
+
+    /**
+     * Prefetch profile and avatar of user, they are in the first screen.
+     */
+    private void prefetchUserImages() {
+        UserBean user;
+        synchronized (this) {
+            user = mUser;
+        }
+        if (null == user || !user.isValid()) return;
+
+        if (!TextUtils.isEmpty(user.getProfileimage())) {
+            loadBitmapAsync(user.getProfileimage(), mProfileImageProfile, new PrefetchRequest());
+        }
+        if (!TextUtils.isEmpty(user.getAvatar())) {
+            loadBitmapAsync(user.getAvatar(), mUserAvatarProfile, new PrefetchRequest());
+        }
+    }
+
+    /**
+     * Prefetch images of tweets whose positions are in [from, to), it's the visible range of list plus some
+     * items ahead in scroll direction. Prefetching of former window which is out of the new one is cancelled,
+     * so it's dropped before its next stage if no view is waiting for it. It should be called in UI thread.
+     * @param tweets
+     * @param from
+     * @param to
+     */
+    public void updatePrefetchWindow(List<TweetBean> tweets, int from, int to) {
+        // images in window, key -> {url, profile}
+        final Map<String, Object[]> window = new HashMap<>();
+        if (null != tweets) {
+            for (int i = Math.max(0, from), end = Math.min(to, tweets.size()); i < end; ++i) {
+                TweetBean tweet = tweets.get(i);
+                // page of it has been dropped
+                if (null == tweet) continue;
+                addToWindow(window, tweet.getSender().getAvatar(), mSenderAvatarProfile);
+                if (null == tweet.getImages()) continue;
+                for (TweetBean.ImagesBean imagesBean : tweet.getImages()) {
+                    // single image and multi images are shown in different profiles
+                    if (1 == tweet.getImages().size()) {
+                        addToWindow(window, imagesBean.getUrl(), mSingleImageProfile);
+                    } else {
+                        addToWindow(window, imagesBean.getUrl(), mGridImageProfile);
+                    }
                 }
             }
         }
+
+        // cancel prefetching out of window, and forget the finished ones
+        for (Iterator<Map.Entry<String, PrefetchRequest>> iterator = mPrefetchRequests.entrySet().iterator();
+             iterator.hasNext(); ) {
+            Map.Entry<String, PrefetchRequest> entry = iterator.next();
+            if (!window.containsKey(entry.getKey())) {
+                entry.getValue().cancel();
+                iterator.remove();
+            } else if (entry.getValue().isDone()) {
+                iterator.remove();
+            }
+        }
+
+        // nothing new is started while paused, the window is updated again on resume
+        if (mPaused) return;
+
+        // start prefetching which is new in window
+        for (Map.Entry<String, Object[]> entry : window.entrySet()) {
+            if (mPrefetchRequests.containsKey(entry.getKey())) continue;
+
+            Object[] image = entry.getValue();
+            PrefetchRequest request = new PrefetchRequest();
+            mPrefetchRequests.put(entry.getKey(), request);
+            loadBitmapAsync((String) image[0], (DecodeProfile) image[1], request);
+        }
+    }
+
+    private static void addToWindow(Map<String, Object[]> window, String url, DecodeProfile profile) {
+        if (TextUtils.isEmpty(url)) return;
+        window.put(BitmapMemoryCache.getKey(url, profile), new Object[]{url, profile});
+    }
+
+    /**
+     * Request of prefetching, nobody waits for its result, it just warms memory cache.
+     */
+    private static class PrefetchRequest implements BitmapCallback {
+        private volatile boolean mCancelled;
+        private volatile boolean mDone;
+
+        @Override
+        public void onBitmapLoaded(String url, Bitmap bitmap) {
+            mDone = true;
+        }
+
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public boolean isDone() {
+            return mDone;
+        }
     }
 
     /**
      * bind bitmap to ImageView.It should be called in UI thread.
      * @param imageView
      * @param url
+     * @return request handle, null if bitmap is got from memory cache directly
      */
-    public void bindBitmap(ImageView imageView, String url) {
-        bindBitmap(imageView, url, 0, 0);
+    public BindRequest bindBitmap(ImageView imageView, String url) {
+        return bindBitmap(imageView, url, 0, 0);
     }
 
     /**
-     * bind bitmap to ImageView. It should be called in UI thread.
+     * bind bitmap to ImageView, it's decoded with ARGB_8888 and fills request size. It should be called in UI thread.
      * @param imageView
      * @param url
      * @param reqWidth
      * @param reqHeight
+     * @return request handle, null if bitmap is got from memory cache directly
      */
-    public void bindBitmap(final ImageView imageView, final String url, final int reqWidth, final int reqHeight) {
-        imageView.setTag(url);
+    public BindRequest bindBitmap(ImageView imageView, String url, int reqWidth, int reqHeight) {
+        return bindBitmap(imageView, url, DecodeProfile.ofSize(reqWidth, reqHeight));
+    }
 
-        // If we can load bitmap from memory, set it to ImageView directly.
-        Bitmap bitmap = loadBitmapFromMemory(url);
+    /**
+     * bind bitmap to ImageView. It should be called in UI thread.
+     * The former request of this ImageView is cancelled, and the new one is cancelled when ImageView is detached.
+     * @param imageView
+     * @param url
+     * @param profile decode profile of image's role, e.g. {@link #getmGridImageProfile()}
+     * @return request handle, null if bitmap is got from memory cache directly
+     */
+    public BindRequest bindBitmap(final ImageView imageView, final String url, final DecodeProfile profile) {
+        // ImageView has been rebound, its former request is useless
+        cancelRequest(imageView);
+
+        // If we can load bitmap from memory, set it to ImageView directly, no async task is needed.
+        Bitmap bitmap = mMemoryCache.acquire(url, profile);
         if (null != bitmap) {
-            imageView.setImageBitmap(bitmap);
+            showBitmap(imageView, bitmap);
+            return null;
         }
 
+        // clear the bitmap of former url until the new one is loaded
+        showBitmap(imageView, null);
+
         // We should start an async task to load bitmap
-        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
-            @Override
-            public void run() {
-                Bitmap bitmap = loadBitmap(url, reqWidth, reqHeight);
-                if (null != bitmap) {
-                    Message result = mMainHandler.obtainMessage(MSG_CODE_POST_RESULT,
-                            new BindBitmapResult(imageView, url, bitmap));
-                    result.sendToTarget();
-                }
-            }
-        });
+        BindRequest request = new BindRequest(imageView, url, profile);
+        imageView.setTag(R.id.image_loader_request, request);
+        imageView.removeOnAttachStateChangeListener(mAttachStateListener);
+        imageView.addOnAttachStateChangeListener(mAttachStateListener);
+        if (mPaused) {
+            // the view may be scrolled out before list stops, it's decided on resume
+            mPausedRequests.put(imageView, request);
+        } else {
+            loadBitmapAsync(url, profile, request);
+        }
+        return request;
     }
 
+    /**
+     * Pause loading, e.g. when list starts flinging: views bound from now on get bitmaps from memory cache only,
+     * the other requests are kept until {@link #resume()}, and no prefetching is started.
+     * Loads which have been started go on. It should be called in UI thread.
+     */
+    public void pause() {
+        mPaused = true;
+    }
+
+    /**
+     * Resume loading, e.g. when list stops. Kept requests of views which are still shown are started,
+     * requests of views scrolled out during pause have been cancelled, they are dropped.
+     * It should be called in UI thread.
+     */
+    public void resume() {
+        if (!mPaused) return;
+        mPaused = false;
+
+        for (BindRequest request : mPausedRequests.values()) {
+            if (request.isCancelled() || request.imageView.getTag(R.id.image_loader_request) != request) continue;
+            loadBitmapAsync(request.url, request.profile, request);
+        }
+        mPausedRequests.clear();
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    /**
+     * show bitmap in ImageView, it's referenced until ImageView shows another one, so it's not pooled meanwhile
+     * @param imageView
+     * @param bitmap it has been acquired for ImageView, null clears ImageView
+     */
+    private void showBitmap(ImageView imageView, Bitmap bitmap) {
+        Object shown = imageView.getTag(R.id.image_loader_bitmap);
+        imageView.setTag(R.id.image_loader_bitmap, bitmap);
+        if (null == bitmap) {
+            imageView.setImageDrawable(null);
+        } else {
+            imageView.setImageBitmap(bitmap);
+        }
+        if (shown instanceof Bitmap) {
+            mMemoryCache.release((Bitmap) shown);
+        }
+    }
+
+    /**
+     * cancel the bind request of ImageView and clear its bitmap, e.g. when its row is recycled.
+     * It should be called in UI thread.
+     * @param imageView
+     */
+    public void clearBitmap(ImageView imageView) {
+        cancelRequest(imageView);
+        showBitmap(imageView, null);
+    }
+
+    /**
+     * cancel the bind request of ImageView, if it exists. It should be called in UI thread.
+     * @param imageView
+     */
+    public void cancelRequest(ImageView imageView) {
+        Object tag = imageView.getTag(R.id.image_loader_request);
+        if (tag instanceof BindRequest) {
+            ((BindRequest) tag).cancel();
+            imageView.setTag(R.id.image_loader_request, null);
+            mPausedRequests.remove(imageView);
+        }
+    }
+
+    /**
+     * Cancel the request when ImageView is detached, e.g. it's scrolled out of RecyclerView.
+     * RecyclerView may attach it again without rebinding, then the cancelled request is restarted.
+     */
+    private final View.OnAttachStateChangeListener mAttachStateListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            Object tag = v.getTag(R.id.image_loader_request);
+            if (tag instanceof BindRequest && ((BindRequest) tag).isCancelled()) {
+                BindRequest request = (BindRequest) tag;
+                bindBitmap((ImageView) v, request.url, request.profile);
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            Object tag = v.getTag(R.id.image_loader_request);
+            if (tag instanceof BindRequest) {
+                ((BindRequest) tag).cancel();
+            }
+        }
+    };
+
     /**
      * UI thread handler, after load bitmap, set it to ImageView.
      */
@@ -331,13 +940,15 @@ public class ImageLoader {
         public void handleMessage(Message msg) {
             super.handleMessage(msg);
             if (MSG_CODE_POST_RESULT == msg.what) {
-                if (msg.obj instanceof BindBitmapResult) {
-                    BindBitmapResult result = (BindBitmapResult) msg.obj;
-                    ImageView imageView = result.imageView;
-                    if (imageView.getTag().equals(result.url)) {
-                        imageView.setImageBitmap(result.bitmap);
+                if (msg.obj instanceof BindRequest) {
+                    BindRequest request = (BindRequest) msg.obj;
+                    ImageView imageView = request.imageView;
+                    if (!request.isCancelled() && imageView.getTag(R.id.image_loader_request) == request) {
+                        imageView.setTag(R.id.image_loader_request, null);
+                        showBitmap(imageView, request.bitmap);
                     } else {
-                        Log.w(TAG, "set bitmap, but image's url has changed, ignore");
+                        Log.w(TAG, "set bitmap, but image's request has been cancelled, ignore");
+                        mMemoryCache.release(request.bitmap);
                     }
                 }
             }
@@ -345,105 +956,452 @@ public class ImageLoader {
     };
 
     /**
-     * load bitmap from memory/disk cache/http
+     * callback of loadBitmapAsync. It's called on loader thread,
+     * or on caller thread when the bitmap is in memory cache.
+     * The bitmap is referenced during the call, a callback keeping it should acquire it in memory cache.
+     */
+    public interface BitmapCallback {
+        /**
+         * @param url
+         * @param bitmap null if load failed or the load is abandoned
+         */
+        void onBitmapLoaded(String url, Bitmap bitmap);
+
+        /**
+         * a load whose callbacks are all cancelled is abandoned before its next stage
+         */
+        boolean isCancelled();
+    }
+
+    /**
+     * load bitmap from memory/disk cache/http asynchronously.
+     * Requests with the same url and profile attach to the load which is running now,
+     * so a bitmap is downloaded and decoded only once however many callers ask for it.
      * @param url
-     * @param reqWidth
-     * @param reqHeight
-     * @return
+     * @param profile
+     * @param callback
      */
-    public Bitmap loadBitmap(String url, int reqWidth, int reqHeight) {
-        Bitmap bitmap = loadBitmapFromMemory(url);
-        if (null == bitmap) {
-            bitmap = loadBitmapFromDiskCache(url, reqWidth, reqHeight);
-        }
-        if (null == bitmap) {
-            bitmap = loadBitmapFromHttp(url, reqWidth, reqHeight);
+    public void loadBitmapAsync(String url, DecodeProfile profile, BitmapCallback callback) {
+        final String key = BitmapMemoryCache.getKey(url, profile);
+        while (true) {
+            Bitmap bitmap = mMemoryCache.acquire(url, profile);
+            if (null != bitmap) {
+                try {
+                    callback.onBitmapLoaded(url, bitmap);
+                } finally {
+                    mMemoryCache.release(bitmap);
+                }
+                return;
+            }
+
+            LoadJob job = mInFlightLoads.get(key);
+            if (null == job) {
+                LoadJob newJob = new LoadJob(key, url, profile);
+                newJob.addCallback(callback);
+                job = mInFlightLoads.putIfAbsent(key, newJob);
+
+                // no one is loading it, start from disk cache
+                if (null == job) {
+                    newJob.execute(LoaderExecutor.STAGE_DISK, newJob.new DiskTask());
+                    return;
+                }
+            }
+
+            // attach to the running load. If it has just finished, its bitmap is in memory cache now, check again
+            if (job.addCallback(callback)) {
+                return;
+            }
         }
-        return bitmap;
     }
 
     /**
-     * Download a bitmap into disk cache, and put into memory cache, return it
-     * @param url
-     * @param reqWidth
-     * @param reqHeight
+     * A load of bitmap shared by all requests with the same key.
+     * It goes through stages: disk stage reads disk cache, network stage downloads into disk cache when missed,
+     * decode stage decodes bitmap and puts it into memory cache.
      */
-    private Bitmap loadBitmapFromHttp(String url, int reqWidth, int reqHeight){
-        if (Looper.myLooper() == Looper.getMainLooper()) {
-            Log.w(TAG, "load bitmap from http cannot run on UI thread.");
-            return null;
+    private class LoadJob {
+        final String key;
+        final String url;
+        final DecodeProfile profile;
+        // keys of disk caches, built once for url and profile
+        final ModelInterner.UrlKeys urlKeys;
+        final ModelInterner.VariantKeys variantKeys;
+
+        // null when the job has finished
+        private List<BitmapCallback> mCallbacks = new ArrayList<>(2);
+
+        // a view is waiting for it, its next stage runs before prefetching
+        private volatile boolean mUrgent;
+
+        // the task queued in a stage and the download queued in scheduler for it, guarded by the job.
+        // They are moved before prefetching when a view starts waiting for the job
+        private LoaderExecutor.StageTask mQueuedTask;
+        private int mQueuedStage;
+        private Request mQueuedDownload;
+        private DownloadScheduler.Callback mDownloadCallback;
+
+        LoadJob(String key, String url, DecodeProfile profile) {
+            this.key = key;
+            this.url = url;
+            this.profile = profile;
+            this.urlKeys = ModelInterner.getDefault().getUrlKeys(url);
+            this.variantKeys = urlKeys.getVariant(profile);
         }
 
-        Bitmap bitmap = null;
-        final Request req = new Request.Builder().url(url).build();
-        try {
-            Response response = mOkHttpClient.newCall(req).execute();
-
-            // download image successfully, decode it with request size, write it to disk cache, and load to memory
-            if (response.isSuccessful()) {
-                // because disk space is not enough or some other reasons, disk cache not created succussfully.
-                // we should download to memory directly.
-                if (null == mDiskLruCache) {
-                    bitmap = decodeBitmapFromBytes(response.body().bytes(), reqWidth, reqHeight);
-                    putBitmapToMemory(url, bitmap);
+        /**
+         * @param callback
+         * @return false if the job has finished
+         */
+        boolean addCallback(BitmapCallback callback) {
+            final LoaderExecutor.StageTask queuedTask;
+            final int queuedStage;
+            final Request queuedDownload;
+            final DownloadScheduler.Callback downloadCallback;
+            synchronized (this) {
+                if (null == mCallbacks) {
+                    return false;
+                }
+                mCallbacks.add(callback);
+                if (!(callback instanceof BindRequest) || mUrgent) {
+                    return true;
+                }
+                mUrgent = true;
+                queuedTask = mQueuedTask;
+                queuedStage = mQueuedStage;
+                queuedDownload = mQueuedDownload;
+                downloadCallback = mDownloadCallback;
+            }
+
+            // it's been queued as a prefetch behind the others, move it to the head now
+            if (null != queuedTask) {
+                mExecutor.promote(queuedStage, queuedTask);
+            }
+            if (null != queuedDownload) {
+                mDownloadScheduler.promote(queuedDownload, downloadCallback);
+            }
+            return true;
+        }
+
+        /**
+         * run the next stage of job
+         * @param stage
+         * @param task
+         */
+        void execute(int stage, LoaderExecutor.StageTask task) {
+            synchronized (this) {
+                mQueuedTask = task;
+                mQueuedStage = stage;
+                mQueuedDownload = null;
+                mDownloadCallback = null;
+            }
+            mExecutor.execute(stage, task);
+        }
+
+        /**
+         * download in scheduler, it's the next stage of network task
+         * @param request
+         * @param callback
+         */
+        void download(Request request, DownloadScheduler.Callback callback) {
+            synchronized (this) {
+                mQueuedTask = null;
+                mQueuedDownload = request;
+                mDownloadCallback = callback;
+            }
+            mDownloadScheduler.enqueue(request, mUrgent, callback);
+        }
+
+        /**
+         * finish the job without result if nobody wants it any longer
+         * @return whether it's abandoned
+         */
+        boolean abandonIfCancelled() {
+            List<BitmapCallback> callbacks;
+            synchronized (this) {
+                if (null == mCallbacks) {
+                    return true;
+                }
+                for (BitmapCallback callback : mCallbacks) {
+                    if (!callback.isCancelled()) {
+                        return false;
+                    }
+                }
+                callbacks = finish();
+            }
+            notifyCallbacks(callbacks, null);
+            return true;
+        }
+
+        /**
+         * finish the job, and notify all callbacks
+         * @param bitmap null if it's failed
+         */
+        void complete(Bitmap bitmap) {
+            // put it into memory cache first, so requests coming after the job finished can get it.
+            // It's referenced until callbacks are notified, so it's not evicted into pool meanwhile
+            if (null != bitmap) {
+                mMemoryCache.acquire(bitmap);
+                putBitmapToMemory(url, profile, bitmap);
+            }
+
+            List<BitmapCallback> callbacks;
+            synchronized (this) {
+                callbacks = finish();
+            }
+            try {
+                notifyCallbacks(callbacks, bitmap);
+            } finally {
+                mMemoryCache.release(bitmap);
+            }
+        }
+
+        private List<BitmapCallback> finish() {
+            mInFlightLoads.remove(key, this);
+            List<BitmapCallback> callbacks = mCallbacks;
+            mCallbacks = null;
+            return callbacks;
+        }
+
+        private void notifyCallbacks(List<BitmapCallback> callbacks, Bitmap bitmap) {
+            if (null == callbacks) return;
+            for (BitmapCallback callback : callbacks) {
+                callback.onBitmapLoaded(url, bitmap);
+            }
+        }
+
+        /**
+         * read disk cache of downsampled variant first, then disk cache of original image.
+         * go to decode stage if hit, otherwise go to network stage
+         */
+        class DiskTask extends LoaderExecutor.StageTask {
+            @Override
+            public void run() {
+                if (abandonIfCancelled()) return;
+
+                DiskLruCache.Snapshot snapshot = getSnapshotFromDiskCache(mVariantDiskCache, variantKeys.getDiskKey());
+                if (null != snapshot) {
+                    execute(LoaderExecutor.STAGE_DECODE, new DecodeTask(snapshot, null, null, true));
+                    return;
+                }
+
+                snapshot = getSnapshotFromDiskCache(mDiskLruCache, urlKeys.getDiskKey());
+                if (null != snapshot) {
+                    execute(LoaderExecutor.STAGE_DECODE, new DecodeTask(snapshot, null, null, false));
                 } else {
-                    writeStreamToDiskCache(url, response.body().byteStream());
-                    bitmap = loadBitmapFromDiskCache(url, reqWidth, reqHeight);
+                    execute(LoaderExecutor.STAGE_NETWORK, new NetworkTask());
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+
+            @Override
+            public void onDropped() {
+                complete(null);
+            }
+
+            @Override
+            public boolean isUrgent() {
+                return mUrgent;
+            }
+        }
+
+        /**
+         * download image into disk cache, or into memory when there is no disk cache, then go to decode stage.
+         * The request waits for its host in download scheduler, the thread is released meanwhile.
+         */
+        class NetworkTask extends LoaderExecutor.StageTask {
+            @Override
+            public void run() {
+                if (abandonIfCancelled()) return;
+
+                // images are cached by disk caches of their own, HTTP cache needn't store them again
+                final Request req = new Request.Builder()
+                        .url(url)
+                        .header("Cache-Control", "no-store")
+                        .build();
+                download(req, new DownloadScheduler.Callback() {
+                    @Override
+                    public void onResponse(Response response) throws IOException {
+                        onDownloaded(response);
+                    }
+
+                    @Override
+                    public void onFailure(IOException e) {
+                        Log.w(TAG, "download bitmap failed: " + url);
+                        complete(null);
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        // the job is finished here, so a request coming later starts a new one
+                        return abandonIfCancelled();
+                    }
+                });
+            }
+
+            private void onDownloaded(Response response) throws IOException {
+                if (!response.isSuccessful()) {
+                    response.body().close();
+                    complete(null);
+                    return;
+                }
+                // nobody wants it any longer while it waited for its host
+                if (abandonIfCancelled()) {
+                    response.body().close();
+                    return;
+                }
+
+                BufferedSource source = response.body().source();
+                try {
+                    // because disk space is not enough or some other reasons, disk cache not created succussfully.
+                    // Or the same url is being written by another load with different request size.
+                    // we should download to memory directly.
+                    DiskLruCache.Editor editor = null == mDiskLruCache ? null : mDiskLruCache.edit(urlKeys.getDiskKey());
+                    if (null == editor) {
+                        byte[] bytes = source.readByteArray();
+                        execute(LoaderExecutor.STAGE_DECODE, new DecodeTask(null, bytes, null, false));
+                        return;
+                    }
+
+                    // write into disk cache and get bounds of image in one pass, then it's decoded only once
+                    BitmapFactory.Options bounds = writeSourceToDiskCache(source, editor);
+                    DiskLruCache.Snapshot snapshot = getSnapshotFromDiskCache(mDiskLruCache, urlKeys.getDiskKey());
+                    if (null != snapshot) {
+                        execute(LoaderExecutor.STAGE_DECODE, new DecodeTask(snapshot, null, bounds, false));
+                    } else {
+                        complete(null);
+                    }
+                } finally {
+                    source.close();
+                }
+            }
+
+            @Override
+            public void onDropped() {
+                complete(null);
+            }
+
+            @Override
+            public boolean isUrgent() {
+                return mUrgent;
+            }
+        }
+
+        /**
+         * decode bitmap with request size from disk cache snapshot or downloaded bytes.
+         * When it's decoded from original image, the downsampled variant is written to disk cache of variants.
+         */
+        class DecodeTask extends LoaderExecutor.StageTask {
+            private final DiskLruCache.Snapshot mSnapshot;
+            private final byte[] mBytes;
+            private final BitmapFactory.Options mBounds;   // bounds of image if it's known
+            private final boolean mIsVariant;              // whether it's from disk cache of variants
+
+            DecodeTask(DiskLruCache.Snapshot snapshot, byte[] bytes, BitmapFactory.Options bounds, boolean isVariant) {
+                mSnapshot = snapshot;
+                mBytes = bytes;
+                mBounds = bounds;
+                mIsVariant = isVariant;
+            }
+
+            @Override
+            public void run() {
+                Bitmap bitmap = null;
+                try {
+                    if (abandonIfCancelled()) return;
+
+                    if (null != mSnapshot) {
+                        bitmap = decodeBitmapFromFD(((FileInputStream) mSnapshot.getInputStream(0)).getFD(),
+                                profile, mBitmapPool, mBounds);
+                    } else {
+                        bitmap = decodeBitmapFromBytes(mBytes, profile, mBitmapPool);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    closeSnapshot(mSnapshot);
+                }
+
+                // keep its variant so that next time it's decoded from a small file. It's encoded after it's shown,
+                // and it's referenced until then, so it's not evicted into pool and overwritten by another decode
+                final boolean encode = null != bitmap && !mIsVariant && null != mVariantDiskCache;
+                if (encode) {
+                    mMemoryCache.acquire(bitmap);
+                }
+                complete(bitmap);
+                if (encode) {
+                    mExecutor.execute(LoaderExecutor.STAGE_ENCODE, new EncodeTask(variantKeys, profile, bitmap));
+                }
+            }
+
+            @Override
+            public void onDropped() {
+                closeSnapshot(mSnapshot);
+                complete(null);
+            }
+
+            @Override
+            public boolean isUrgent() {
+                return mUrgent;
+            }
         }
-        return bitmap;
     }
 
     /**
-     * load bitmap to memory cache
-     * @param key
-     * @param bitmap
+     * write downsampled variant of a decoded bitmap into disk cache, the bitmap is released after then
      */
-    private void putBitmapToMemory(String key, Bitmap bitmap) {
-        if (null != bitmap && mMemoryCache.get(key) == null) {
-            mMemoryCache.put(key, bitmap);
+    private class EncodeTask extends LoaderExecutor.StageTask {
+        private final ModelInterner.VariantKeys mKeys;
+        private final DecodeProfile mProfile;
+        private final Bitmap mBitmap;
+
+        EncodeTask(ModelInterner.VariantKeys keys, DecodeProfile profile, Bitmap bitmap) {
+            mKeys = keys;
+            mProfile = profile;
+            mBitmap = bitmap;
+        }
+
+        @Override
+        public void run() {
+            try {
+                writeVariantToDiskCache(mKeys, mProfile, mBitmap);
+            } finally {
+                mMemoryCache.release(mBitmap);
+            }
+        }
+
+        @Override
+        public void onDropped() {
+            mMemoryCache.release(mBitmap);
         }
     }
 
     /**
-     * load bitmap from memory cache
-     * @param key
-     * @return
+     * load bitmap to memory cache, it's cached as a variant of url with profile
+     * @param url
+     * @param profile
+     * @param bitmap
      */
-    private Bitmap loadBitmapFromMemory(String key) {
-        return mMemoryCache.get(key);
+    private void putBitmapToMemory(String url, DecodeProfile profile, Bitmap bitmap) {
+        mMemoryCache.put(url, profile, bitmap);
     }
 
     /**
-     * load Bitmap from disk cache with request size, and load it to memory cache.
-     * @param url
-     * @param reqWidth
-     * @param reqHeight
-     * @return
+     * get snapshot from disk cache, it should be closed after used.
+     * @param diskCache disk cache of original images or downsampled variants
+     * @param diskKey key of url or variant in disk cache, see {@link ModelInterner.UrlKeys}
+     * @return null if it's not in disk cache
      */
-    private Bitmap loadBitmapFromDiskCache(String url, int reqWidth, int reqHeight) {
+    private static DiskLruCache.Snapshot getSnapshotFromDiskCache(DiskLruCache diskCache, String diskKey) {
         if (Looper.myLooper() == Looper.getMainLooper()) {
             Log.w(TAG, "load bitmap from disk cache cannot run on UI thread.");
             return null;
         }
 
-        if (null == mDiskLruCache) {
+        if (null == diskCache) {
             return null;
         }
 
         try {
-            // use MD5 decode url for key of disk cache
-            String key = decodeMD5(url);
-            DiskLruCache.Snapshot snapshot = mDiskLruCache.get(key);
-            if (null != snapshot) {
-                // current image has disk cache, use it
-                Bitmap bitmap = decodeBitmapFromFD(((FileInputStream)snapshot.getInputStream(0)).getFD(), reqWidth, reqHeight);
-                putBitmapToMemory(url, bitmap);
-                return bitmap;
-            }
+            return diskCache.get(diskKey);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -451,63 +1409,95 @@ public class ImageLoader {
     }
 
     /**
-     * write bitmap to disk cache, because DiskLruCache.edit is thread-safely, so no need to do synchronized
-     * @param key
-     * @param is
+     * Write downsampled bitmap into disk cache of variants. Opaque bitmaps are compressed as JPEG,
+     * others as WEBP which keeps alpha from JELLY_BEAN_MR2, or PNG before it.
+     * Requests without size want the original image, it's not written because the original is in disk cache.
+     * @param keys keys of the variant
+     * @param profile
+     * @param bitmap
      */
-    private void writeStreamToDiskCache(String key, InputStream is) {
-        if (Looper.myLooper() == Looper.getMainLooper()) {
-            Log.w(TAG, "load bitmap from disk cache cannot run on UI thread.");
-            return;
-        }
-
-        if (null == mDiskLruCache) return;
+    private void writeVariantToDiskCache(ModelInterner.VariantKeys keys, DecodeProfile profile, Bitmap bitmap) {
+        if (null == mVariantDiskCache || profile.getTargetWidth() <= 0 || profile.getTargetHeight() <= 0) return;
 
-        key = decodeMD5(key);
-        // write into disk cache
         DiskLruCache.Editor editor = null;
-        BufferedOutputStream bos = null;
-        BufferedInputStream bis = null;
+        OutputStream os = null;
         try {
-            editor = mDiskLruCache.edit(key);
-            if (null != editor) {
-                bos = new BufferedOutputStream(editor.newOutputStream(0));
-                bis = new BufferedInputStream(is);
-                byte[] bts = new byte[1024];
-                int read = -1;
-                while((read = bis.read(bts, 0, bts.length)) != -1) {
-                    bos.write(bts, 0, read);
-                }
-                bos.flush();
+            editor = mVariantDiskCache.edit(keys.getDiskKey());
+            if (null == editor) return;   // it's being written by another load
+
+            os = new BufferedOutputStream(editor.newOutputStream(0), VARIANT_BUFFER_SIZE);
+            final boolean compressed;
+            if (!bitmap.hasAlpha()) {
+                compressed = bitmap.compress(Bitmap.CompressFormat.JPEG, VARIANT_QUALITY, os);
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                compressed = bitmap.compress(Bitmap.CompressFormat.WEBP, VARIANT_QUALITY, os);
+            } else {
+                compressed = bitmap.compress(Bitmap.CompressFormat.PNG, VARIANT_QUALITY, os);
+            }
+            os.close();
+            os = null;
+            if (compressed) {
                 editor.commit();
+            } else {
+                editor.abort();
             }
         } catch (IOException e) {
             if (null != editor) {
-                try {
-                    editor.abort();
-                } catch (IOException e1) {
-                    e1.printStackTrace();
-                }
+                editor.abortUnlessCommitted();
             }
         } finally {
-            closeInStream(bis);
-            closeOutStream(bos);
+            closeQuietly(os);
         }
     }
 
-    private static void closeInStream(InputStream is) {
+    private static void closeSnapshot(DiskLruCache.Snapshot snapshot) {
+        if (null != snapshot) {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Write downloading image to disk cache. Segments of source are written to the cache file without intermediate copies,
+     * and the header of image is kept to parse its bounds, so it need not be read again before decoding.
+     * @param source
+     * @param editor it's committed if succeed, otherwise it's aborted
+     * @return bounds of image, null if they cannot be parsed from header
+     * @throws IOException
+     */
+    private static BitmapFactory.Options writeSourceToDiskCache(BufferedSource source, DiskLruCache.Editor editor)
+            throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(IMAGE_HEADER_SIZE);
+        Sink sink = null;
         try {
-            if (null != is) {
-                is.close();
+            sink = Okio.sink(editor.newOutputStream(0));
+            Buffer buffer = new Buffer();
+            while (source.read(buffer, TRANSFER_SIZE) != -1) {
+                if (header.size() < IMAGE_HEADER_SIZE) {
+                    buffer.copyTo(header, 0, Math.min(buffer.size(), IMAGE_HEADER_SIZE - header.size()));
+                }
+                sink.write(buffer, buffer.size());
             }
+            sink.close();
+            sink = null;
+            editor.commit();
         } catch (IOException e) {
-            e.printStackTrace();
+            editor.abortUnlessCommitted();
+            throw e;
+        } finally {
+            closeQuietly(sink);
         }
+
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        final byte[] headerBytes = header.toByteArray();
+        BitmapFactory.decodeByteArray(headerBytes, 0, headerBytes.length, bounds);
+        return bounds.outWidth > 0 && bounds.outHeight > 0 ? bounds : null;
     }
-    private static void closeOutStream(OutputStream os) {
+
+    private static void closeQuietly(Closeable closeable) {
         try {
-            if (null != os) {
-                os.close();
+            if (null != closeable) {
+                closeable.close();
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -516,13 +1506,14 @@ public class ImageLoader {
 
     /**
      * open DiskLruCache
+     * @param uniqueName name of cache directory
+     * @param maxSize
+     * @return null if disk has no enough space or failed
      */
-    private void openDiskLruCache() {
-        if (null != mDiskLruCache) return;
-
+    private DiskLruCache openDiskLruCache(String uniqueName, int maxSize) {
         try {
             // make cache directory
-            File cacheDir = getDiskCacheDir(mContext,"images");
+            File cacheDir = getDiskCacheDir(mContext, uniqueName);
             if(!cacheDir.exists()) {
                 cacheDir.mkdirs();
             }
@@ -537,12 +1528,13 @@ public class ImageLoader {
             }
 
             // If disk has enough space, create cache
-            if (getUsableSpace(cacheDir) >= DISK_CACHE_SIZE) {
-                mDiskLruCache = DiskLruCache.open(cacheDir, versionCode, 1, DISK_CACHE_SIZE);
+            if (getUsableSpace(cacheDir) >= maxSize) {
+                return DiskLruCache.open(cacheDir, versionCode, 1, maxSize);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return null;
     }
 
     /**
@@ -570,108 +1562,216 @@ public class ImageLoader {
      * @return
      */
     public static Bitmap decodeBitmapFromStream(InputStream is, int reqWidth, int reqHeight) {
-        ByteArrayOutputStream baos = null;
-        BufferedInputStream bis = null;
+        BufferedSource source = Okio.buffer(Okio.source(is));
         try {
-            baos = new ByteArrayOutputStream();
-            byte[] bt = new byte[1024];
-            int read;
-            bis = new BufferedInputStream(is, 2*1024);
-            while ((read = bis.read(bt, 0, bt.length)) != -1) {
-                baos.write(bt, 0, read);
-            }
+            return decodeBitmapFromBytes(source.readByteArray(), reqWidth, reqHeight);
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
-            closeOutStream(baos);
-            closeInStream(bis);
+            closeQuietly(source);
         }
-
-        Bitmap bitmap = decodeBitmapFromBytes(baos.toByteArray(), reqWidth, reqHeight);
-        return bitmap;
+        return null;
     }
 
     public static Bitmap decodeBitmapFromFD(FileDescriptor fd, int reqWidth, int reqHeight) {
-        // First decode with inJustDecodeBounds=true to check dimensions
+        return decodeBitmapFromFD(fd, DecodeProfile.ofSize(reqWidth, reqHeight), null, null);
+    }
+
+    /**
+     * decode bitmap with profile from file descriptor, reuse a bitmap of pool if possible
+     * @param fd
+     * @param profile
+     * @param bitmapPool it can be null
+     * @param bounds bounds of image if they are known, then fd is read only once. it can be null
+     * @return
+     */
+    public static Bitmap decodeBitmapFromFD(FileDescriptor fd, DecodeProfile profile, BitmapPool bitmapPool,
+                                            BitmapFactory.Options bounds) {
         final BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFileDescriptor(fd ,null, options);
+        if (null != bounds) {
+            options.outWidth = bounds.outWidth;
+            options.outHeight = bounds.outHeight;
+            options.outMimeType = bounds.outMimeType;
+        } else {
+            // First decode with inJustDecodeBounds=true to check dimensions
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFileDescriptor(fd, null, options);
+        }
 
-        // Calculate inSampleSize
-        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        // Calculate inSampleSize and densities for the exact target size
+        final DecodeSizeCalculator size = applyDecodeProfile(options, profile);
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFileDescriptor(fd ,null, options);
+        if (addInBitmapOptions(options, bitmapPool)) {
+            try {
+                final Bitmap bitmap = BitmapFactory.decodeFileDescriptor(fd ,null, options);
+                if (null == bitmap) {
+                    // broken data, the pooled bitmap is not used
+                    bitmapPool.put(options.inBitmap);
+                }
+                return finishDecode(bitmap, size, profile, bitmapPool);
+            } catch (IllegalArgumentException e) {
+                // the pooled bitmap cannot be reused for this image, give it back and decode without inBitmap
+                bitmapPool.put(options.inBitmap);
+                options.inBitmap = null;
+            }
+        }
+        final Bitmap bitmap = BitmapFactory.decodeFileDescriptor(fd ,null, options);
+        return finishDecode(bitmap, size, profile, bitmapPool);
+    }
+
+    public static Bitmap decodeBitmapFromBytes(byte[] bytes, int reqWidth, int reqHeight) {
+        return decodeBitmapFromBytes(bytes, DecodeProfile.ofSize(reqWidth, reqHeight), null);
     }
 
     /**
-     * decode bitmap with size of reqWidth and reqHeight from inputstream
+     * decode bitmap with profile from bytes, reuse a bitmap of pool if possible
      * @param bytes
-     * @param reqWidth
-     * @param reqHeight
+     * @param profile
+     * @param bitmapPool it can be null
      * @return
      */
-    public static Bitmap decodeBitmapFromBytes(byte[] bytes, int reqWidth, int reqHeight) {
+    public static Bitmap decodeBitmapFromBytes(byte[] bytes, DecodeProfile profile, BitmapPool bitmapPool) {
         // First decode with inJustDecodeBounds=true to check dimensions
         final BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
         BitmapFactory.decodeByteArray(bytes, 0 ,bytes.length, options);
 
-        // Calculate inSampleSize
-        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        // Calculate inSampleSize and densities for the exact target size
+        final DecodeSizeCalculator size = applyDecodeProfile(options, profile);
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeByteArray(bytes, 0 ,bytes.length, options);
+        if (addInBitmapOptions(options, bitmapPool)) {
+            try {
+                final Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0 ,bytes.length, options);
+                if (null == bitmap) {
+                    // broken data, the pooled bitmap is not used
+                    bitmapPool.put(options.inBitmap);
+                }
+                return finishDecode(bitmap, size, profile, bitmapPool);
+            } catch (IllegalArgumentException e) {
+                // the pooled bitmap cannot be reused for this image, give it back and decode without inBitmap
+                bitmapPool.put(options.inBitmap);
+                options.inBitmap = null;
+            }
+        }
+        final Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0 ,bytes.length, options);
+        return finishDecode(bitmap, size, profile, bitmapPool);
     }
 
-    private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        if (0 == reqWidth || 0 == reqHeight) {
-            return 1;
+    /**
+     * Decoded bitmaps are mutable so that they can be pooled after evicted from memory cache.
+     * @param options
+     * @param bitmapPool
+     * @return whether a bitmap of pool is set as inBitmap
+     */
+    private static boolean addInBitmapOptions(BitmapFactory.Options options, BitmapPool bitmapPool) {
+        options.inMutable = true;
+        if (null == bitmapPool) {
+            return false;
         }
+        options.inBitmap = bitmapPool.get(options);
+        return null != options.inBitmap;
+    }
 
-        // Raw height and width of image  
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-        if(height > reqHeight || width > reqWidth) {
-            if(width > height) {
-                inSampleSize = Math.round((float)height / (float)reqHeight);
-            } else {
-                inSampleSize = Math.round((float)width / (float)reqWidth);
-            }
+    /**
+     * set config of profile, set inSampleSize to the largest power of two which doesn't undershoot the target size,
+     * and set densities to scale the sampled image to the exact target size
+     * @param options options whose out-size has been set by bounds decoding
+     * @param profile
+     * @return
+     */
+    private static DecodeSizeCalculator applyDecodeProfile(BitmapFactory.Options options, DecodeProfile profile) {
+        final DecodeSizeCalculator size = profile.isFitInside()
+                ? DecodeSizeCalculator.calculateFit(options.outWidth, options.outHeight,
+                        profile.getTargetWidth(), profile.getTargetHeight())
+                : DecodeSizeCalculator.calculate(options.outWidth, options.outHeight,
+                        profile.getTargetWidth(), profile.getTargetHeight());
+        options.inPreferredConfig = profile.getConfig();
+        options.inSampleSize = size.getSampleSize();
+        if (size.needsScaling()) {
+            options.inScaled = true;
+            options.inDensity = size.getDensity();
+            options.inTargetDensity = size.getTargetDensity();
         }
-        return inSampleSize;
+        return size;
     }
 
     /**
-     * decode with MD5 for url
-     * @param key
+     * Densities used for scaling are in pixels of image, reset density of bitmap so it's drawn in its pixel size.
+     * Before KitKat not all decoders apply density scaling, scale it here if it's not done.
+     * Then apply transforms of profile.
+     * @param bitmap
+     * @param size
+     * @param profile
+     * @param bitmapPool it can be null
      * @return
      */
-    private static String decodeMD5(String key) {
-        String md5Val;
-        try {
-            final MessageDigest mDigest = MessageDigest.getInstance("MD5");
-            mDigest.update(key.getBytes());
-            md5Val = bytesToHexString(mDigest.digest());
-        } catch (NoSuchAlgorithmException e) {
-            md5Val = String.valueOf(key.hashCode());
+    private static Bitmap finishDecode(Bitmap bitmap, DecodeSizeCalculator size, DecodeProfile profile,
+                                       BitmapPool bitmapPool) {
+        if (null == bitmap) {
+            return null;
         }
-        return md5Val;
-    }
 
-    private static String bytesToHexString(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < bytes.length; i++) {
-            String hex = Integer.toHexString(0xFF & bytes[i]);
-            if (hex.length() == 1) {
-                sb.append('0');
+        if (size.needsScaling()) {
+            bitmap.setDensity(Resources.getSystem().getDisplayMetrics().densityDpi);
+
+            if (Math.abs(bitmap.getWidth() - size.getTargetWidth()) > 1
+                    || Math.abs(bitmap.getHeight() - size.getTargetHeight()) > 1) {
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, size.getTargetWidth(), size.getTargetHeight(), true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                }
+                bitmap = scaled;
             }
-            sb.append(hex);
         }
-        return sb.toString();
+
+        if (profile.isCenterCrop()) {
+            bitmap = centerCrop(bitmap, profile.getTargetWidth(), profile.getTargetHeight(), bitmapPool);
+        }
+        return bitmap;
+    }
+
+    /**
+     * crop the center of bitmap to the size, the bitmap fills the size after decoded so it's not scaled.
+     * The cropped one is drawn into a mutable bitmap, so it can be pooled too; the source is given to pool.
+     * @param bitmap
+     * @param width
+     * @param height
+     * @param bitmapPool it can be null
+     * @return
+     */
+    private static Bitmap centerCrop(Bitmap bitmap, int width, int height, BitmapPool bitmapPool) {
+        // image smaller than the size is not scaled up
+        width = Math.min(width, bitmap.getWidth());
+        height = Math.min(height, bitmap.getHeight());
+        if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+            return bitmap;
+        }
+
+        final Bitmap.Config config = null == bitmap.getConfig() ? Bitmap.Config.ARGB_8888 : bitmap.getConfig();
+        Bitmap cropped = null == bitmapPool ? null : bitmapPool.get(width, height, config);
+        if (null == cropped) {
+            cropped = Bitmap.createBitmap(width, height, config);
+        } else {
+            cropped.eraseColor(Color.TRANSPARENT);
+        }
+        cropped.setDensity(bitmap.getDensity());
+        cropped.setHasAlpha(bitmap.hasAlpha());
+
+        final int left = (bitmap.getWidth() - width) / 2;
+        final int top = (bitmap.getHeight() - height) / 2;
+        new Canvas(cropped).drawBitmap(bitmap, new Rect(left, top, left + width, top + height),
+                new Rect(0, 0, width, height), null);
+
+        if (null != bitmapPool) {
+            bitmapPool.put(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+        return cropped;
     }
 
     private static long getUsableSpace(File path) {
@@ -683,17 +1783,43 @@ public class ImageLoader {
     }
 
     /**
-     * method bindBitmap post a instance of BindBitmapResult for UI handler to refresh view.
+     * Request handle of bindBitmap, it's posted to UI handler to refresh view when bitmap is loaded.
+     * A load whose requests are all cancelled is abandoned before its next stage.
      */
-    public static class BindBitmapResult {
-        public ImageView imageView;
-        public String url;
+    public class BindRequest implements BitmapCallback {
+        public final ImageView imageView;
+        public final String url;
+        public final DecodeProfile profile;
         public Bitmap bitmap;
 
-        public BindBitmapResult(ImageView imageView, String url, Bitmap bitmap) {
+        private volatile boolean mCancelled;
+
+        public BindRequest(ImageView imageView, String url, DecodeProfile profile) {
             this.imageView = imageView;
             this.url = url;
-            this.bitmap = bitmap;
+            this.profile = profile;
+        }
+
+        @Override
+        public void onBitmapLoaded(String url, Bitmap bitmap) {
+            if (null != bitmap && !mCancelled) {
+                // referenced until it's shown or given up in UI thread
+                mMemoryCache.acquire(bitmap);
+                this.bitmap = bitmap;
+                mMainHandler.obtainMessage(MSG_CODE_POST_RESULT, this).sendToTarget();
+            }
+        }
+
+        /**
+         * cancel this request, it will not set bitmap to ImageView
+         */
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
         }
     }
 }
@@ -3,11 +3,20 @@ package com.example.friendcircle;
 import com.example.friendcircle.bean.TweetBean;
 import com.example.friendcircle.bean.UserBean;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author yaobaocheng
@@ -15,34 +24,173 @@ import java.util.LinkedList;
  */
 public class JsonParserUtil {
     /**
-     * filter invalid tweets and return valid ones
+     * Shared Gson, beans are bound by hand-written TypeAdapters instead of reflection.
+     * Gson is thread safely, its adapters are looked up here once so no call pays for the warmup.
+     */
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(UserBean.class, JsonTypeAdapters.USER)
+            .registerTypeAdapter(TweetBean.class, JsonTypeAdapters.TWEET)
+            .registerTypeAdapter(TweetBean.SenderBean.class, JsonTypeAdapters.SENDER)
+            .registerTypeAdapter(TweetBean.ImagesBean.class, JsonTypeAdapters.IMAGES)
+            .registerTypeAdapter(TweetBean.CommentBean.class, JsonTypeAdapters.COMMENT)
+            .create();
+    private static final TypeAdapter<TweetBean> TWEET_ADAPTER = GSON.getAdapter(TweetBean.class);
+    static {
+        GSON.getAdapter(UserBean.class);
+    }
+
+    /**
+     * Counts tweets of a feed by hash in order of feed and sets their occurrences,
+     * so identical posts of a feed have different ids, see {@link TweetBean#getId()}.
+     */
+    static class OccurrenceCounter {
+        private final Map<Long, Integer> mCounts = new HashMap<>();
+
+        void count(TweetBean tweet) {
+            final Long hash = tweet.getHash();
+            final Integer count = mCounts.get(hash);
+            tweet.setOccurrence(null == count ? 0 : count);
+            mCounts.put(hash, null == count ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * filter invalid tweets in one pass and return valid ones, their occurrences are counted
      * @param list
      * @return
      */
-    public static LinkedList<TweetBean> filterInvalidTweet(LinkedList<TweetBean> list) {
+    public static TweetFeed filterInvalidTweet(List<TweetBean> list) {
         if (null == list || list.size() == 0) {
-            return list;
+            return TweetFeed.empty();
         }
 
-        for (int i = 0; i < list.size(); ++i) {
-            TweetBean tweetBean = list.get(i);
-            if (!tweetBean.isValid()) {
-                list.remove(tweetBean);
-                --i;
+        TweetFeed.Builder builder = new TweetFeed.Builder(list.size());
+        OccurrenceCounter occurrences = new OccurrenceCounter();
+        for (TweetBean tweetBean : list) {
+            if (null != tweetBean && tweetBean.isValid()) {
+                occurrences.count(tweetBean);
+                builder.add(tweetBean);
             }
         }
-        return list;
+        return builder.build();
     }
 
     /**
-     * parse Json string to tweets list
+     * parse Json string to tweets list, invalid tweets are kept
      * @param jsonData
+     * @return null if Json is null
+     */
+    public static TweetFeed parseTweetFromJson(String jsonData) {
+        if (null == jsonData) return null;
+        try {
+            JsonReader jsonReader = new JsonReader(new StringReader(jsonData));
+            jsonReader.setLenient(true);
+            if (JsonToken.NULL == jsonReader.peek()) {
+                return null;
+            }
+            TweetFeed.Builder builder = new TweetFeed.Builder();
+            jsonReader.beginArray();
+            while (jsonReader.hasNext()) {
+                builder.add(TWEET_ADAPTER.read(jsonReader));
+            }
+            jsonReader.endArray();
+            return builder.build();
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonParseException(e);
+        }
+    }
+
+    /**
+     * listener of streaming parsing, it's called on the parsing thread
+     */
+    public interface TweetsBatchListener {
+        /**
+         * @param tweets valid tweets parsed since the former batch, in order of feed
+         */
+        void onTweetsBatch(List<TweetBean> tweets);
+    }
+
+    /**
+     * a page of tweets feed
+     */
+    public static class TweetsPage {
+        // valid tweets of page
+        public final TweetFeed tweets;
+        // how many entries are in Json array, invalid ones included
+        public final int entryCount;
+
+        TweetsPage(TweetFeed tweets, int entryCount) {
+            this.tweets = tweets;
+            this.entryCount = entryCount;
+        }
+    }
+
+    /**
+     * Parse Json array of tweets from reader while it's being read, the whole Json string is never held.
+     * Valid tweets are emitted in batches as soon as they are decoded: the first batch has firstBatchSize tweets
+     * so that the first screen is shown early, the others have batchSize tweets, and the last one may be smaller.
+     * Occurrences of valid tweets are counted in the response.
+     * @param reader
+     * @param firstBatchSize
+     * @param batchSize
+     * @param listener
+     * @return all valid tweets
+     * @throws IOException if reading failed or Json is malformed
+     */
+    public static TweetFeed parseTweetsFromJson(Reader reader, int firstBatchSize, int batchSize,
+                                                TweetsBatchListener listener) throws IOException {
+        return parseTweetsPageFromJson(reader, firstBatchSize, batchSize, listener).tweets;
+    }
+
+    /**
+     * the same as {@link #parseTweetsFromJson(Reader, int, int, TweetsBatchListener)},
+     * and count entries of Json array so that paging knows where the next page begins
+     * @param reader
+     * @param firstBatchSize
+     * @param batchSize
+     * @param listener
      * @return
+     * @throws IOException
      */
-    public static LinkedList<TweetBean> parseTweetFromJson(String jsonData) {
-        Type listType = new TypeToken<LinkedList<TweetBean>>(){}.getType();
-        Gson gson = new Gson();
-        return gson.fromJson(jsonData, listType);
+    public static TweetsPage parseTweetsPageFromJson(Reader reader, int firstBatchSize, int batchSize,
+                                                     TweetsBatchListener listener) throws IOException {
+        final TweetFeed.Builder tweets = new TweetFeed.Builder();
+        final OccurrenceCounter occurrences = new OccurrenceCounter();
+        int entryCount = 0;
+        final JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+        List<TweetBean> batch = new ArrayList<>(firstBatchSize);
+        int currentBatchSize = firstBatchSize;
+        try {
+            if (JsonToken.NULL == jsonReader.peek()) {
+                jsonReader.nextNull();
+                return new TweetsPage(TweetFeed.empty(), 0);
+            }
+
+            jsonReader.beginArray();
+            while (jsonReader.hasNext()) {
+                TweetBean tweet = TWEET_ADAPTER.read(jsonReader);
+                ++entryCount;
+                if (null == tweet || !tweet.isValid()) continue;
+
+                occurrences.count(tweet);
+                tweets.add(tweet);
+                batch.add(tweet);
+                if (batch.size() >= currentBatchSize) {
+                    listener.onTweetsBatch(batch);
+                    currentBatchSize = batchSize;
+                    batch = new ArrayList<>(currentBatchSize);
+                }
+            }
+            jsonReader.endArray();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("malformed tweets Json", e);
+        }
+
+        if (!batch.isEmpty()) {
+            listener.onTweetsBatch(batch);
+        }
+        return new TweetsPage(tweets.build(), entryCount);
     }
 
     /**
@@ -51,15 +199,14 @@ public class JsonParserUtil {
      * @return
      */
     public static UserBean parseUserFromJson(String jsonData) {
-        Gson gson = new Gson();
-        return gson.fromJson(jsonData, UserBean.class);
+        return GSON.fromJson(jsonData, UserBean.class);
     }
 
     /**
      * used for debug
      * @param tweetList
      */
-    public static void printTweetList(LinkedList<TweetBean> tweetList) {
+    public static void printTweetList(List<TweetBean> tweetList) {
         for (Iterator iterator = tweetList.iterator(); iterator.hasNext(); ) {
             TweetBean tweet = (TweetBean) iterator.next();
             System.out.println(tweet.toString());
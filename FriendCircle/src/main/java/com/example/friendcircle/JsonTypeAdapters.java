@@ -0,0 +1,276 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+import com.example.friendcircle.bean.UserBean;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written Gson TypeAdapters of beans, they read and write fields directly without reflection.
+ * Field names are the same as what Gson binds by reflection, unknown fields are skipped.
+ */
+public class JsonTypeAdapters {
+    private JsonTypeAdapters() {
+    }
+
+    public static final TypeAdapter<UserBean> USER = new TypeAdapter<UserBean>() {
+        @Override
+        public void write(JsonWriter out, UserBean user) throws IOException {
+            if (null == user) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("profile-image").value(user.getProfileimage());
+            out.name("avatar").value(user.getAvatar());
+            out.name("nick").value(user.getNick());
+            out.name("username").value(user.getUsername());
+            out.endObject();
+        }
+
+        @Override
+        public UserBean read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            UserBean user = new UserBean();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "profile-image":
+                        user.setProfileimage(ModelInterner.getDefault().internUrl(nextString(in)));
+                        break;
+                    case "avatar":
+                        user.setAvatar(ModelInterner.getDefault().internUrl(nextString(in)));
+                        break;
+                    case "nick":
+                        user.setNick(nextString(in));
+                        break;
+                    case "username":
+                        user.setUsername(nextString(in));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return user;
+        }
+    };
+
+    public static final TypeAdapter<TweetBean.SenderBean> SENDER = new TypeAdapter<TweetBean.SenderBean>() {
+        @Override
+        public void write(JsonWriter out, TweetBean.SenderBean sender) throws IOException {
+            if (null == sender) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("username").value(sender.getUsername());
+            out.name("nick").value(sender.getNick());
+            out.name("avatar").value(sender.getAvatar());
+            out.endObject();
+        }
+
+        @Override
+        public TweetBean.SenderBean read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            String username = null;
+            String nick = null;
+            String avatar = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "username":
+                        username = nextString(in);
+                        break;
+                    case "nick":
+                        nick = nextString(in);
+                        break;
+                    case "avatar":
+                        avatar = nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            // shared by all tweets and comments of the user
+            return ModelInterner.getDefault().sender(username, nick, avatar);
+        }
+    };
+
+    public static final TypeAdapter<TweetBean.ImagesBean> IMAGES = new TypeAdapter<TweetBean.ImagesBean>() {
+        @Override
+        public void write(JsonWriter out, TweetBean.ImagesBean image) throws IOException {
+            if (null == image) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("url").value(image.getUrl());
+            out.endObject();
+        }
+
+        @Override
+        public TweetBean.ImagesBean read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            TweetBean.ImagesBean image = new TweetBean.ImagesBean();
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("url".equals(in.nextName())) {
+                    image.setUrl(ModelInterner.getDefault().internUrl(nextString(in)));
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return image;
+        }
+    };
+
+    public static final TypeAdapter<TweetBean.CommentBean> COMMENT = new TypeAdapter<TweetBean.CommentBean>() {
+        @Override
+        public void write(JsonWriter out, TweetBean.CommentBean comment) throws IOException {
+            if (null == comment) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("content").value(comment.getContent());
+            out.name("sender");
+            SENDER.write(out, comment.getSender());
+            out.endObject();
+        }
+
+        @Override
+        public TweetBean.CommentBean read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            TweetBean.CommentBean comment = new TweetBean.CommentBean();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "content":
+                        comment.setContent(nextString(in));
+                        break;
+                    case "sender":
+                        comment.setSender(SENDER.read(in));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return comment;
+        }
+    };
+
+    public static final TypeAdapter<TweetBean> TWEET = new TypeAdapter<TweetBean>() {
+        @Override
+        public void write(JsonWriter out, TweetBean tweet) throws IOException {
+            if (null == tweet) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("content").value(tweet.getContent());
+            out.name("sender");
+            SENDER.write(out, tweet.getSender());
+            out.name("images");
+            writeList(out, tweet.getImages(), IMAGES);
+            out.name("comments");
+            writeList(out, tweet.getComments(), COMMENT);
+            out.endObject();
+        }
+
+        @Override
+        public TweetBean read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            TweetBean tweet = new TweetBean();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "content":
+                        tweet.setContent(nextString(in));
+                        break;
+                    case "sender":
+                        tweet.setSender(SENDER.read(in));
+                        break;
+                    case "images":
+                        tweet.setImages(readList(in, IMAGES));
+                        break;
+                    case "comments":
+                        tweet.setComments(readList(in, COMMENT));
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return tweet;
+        }
+    };
+
+    /**
+     * read a string, null and numbers are accepted as Gson does
+     */
+    private static String nextString(JsonReader in) throws IOException {
+        if (JsonToken.NULL == in.peek()) {
+            in.nextNull();
+            return null;
+        }
+        if (JsonToken.BOOLEAN == in.peek()) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    private static <T> List<T> readList(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+        if (JsonToken.NULL == in.peek()) {
+            in.nextNull();
+            return null;
+        }
+        List<T> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            list.add(adapter.read(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    private static <T> void writeList(JsonWriter out, List<T> list, TypeAdapter<T> adapter) throws IOException {
+        if (null == list) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (T item : list) {
+            adapter.write(out, item);
+        }
+        out.endArray();
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.friendcircle;
+
+import android.os.Process;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor owned by ImageLoader. Work is split into stages, each stage has its own threads and bounded queue,
+ * so slow downloads cannot block decoding and decoding cannot starve downloads:
+ * network stage for http requests, disk stage for reading disk cache, decode stage for decoding bitmaps,
+ * encode stage for writing downsampled variants into disk cache, it runs in lower priority than the others.
+ * An urgent {@link StageTask} is queued before the others, the latest urgent one runs first.
+ * When the queue of a stage is full, its oldest queued task is dropped, non-urgent ones first, because it's
+ * the most likely one nobody waits for any longer; a dropped StageTask is told by {@link StageTask#onDropped()}.
+ */
+public class LoaderExecutor {
+    public static final int STAGE_NETWORK = 0;
+    public static final int STAGE_DISK    = 1;
+    public static final int STAGE_DECODE  = 2;
+    public static final int STAGE_ENCODE  = 3;
+    private static final String[] STAGE_NAMES = {"network", "disk", "decode", "encode"};
+    // nobody waits for encoding, it yields to the other stages
+    private static final int[] STAGE_PRIORITIES = {
+            Process.THREAD_PRIORITY_BACKGROUND,
+            Process.THREAD_PRIORITY_BACKGROUND,
+            Process.THREAD_PRIORITY_BACKGROUND,
+            Process.THREAD_PRIORITY_LOWEST
+    };
+
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Task which is told when it's dropped from a full queue, so that whoever waits for it can be notified.
+     */
+    public static abstract class StageTask implements Runnable {
+        /**
+         * called on the thread which submits another task, this task will never run
+         */
+        public abstract void onDropped();
+
+        /**
+         * urgent task is queued at the head of queue, e.g. loading images for visible views
+         */
+        public boolean isUrgent() {
+            return false;
+        }
+    }
+
+    /**
+     * queue of a stage, urgent tasks are inserted at its head
+     */
+    private static class StageQueue extends LinkedBlockingDeque<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        StageQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            if (isUrgent(runnable)) {
+                return offerFirst(runnable);
+            }
+            return offerLast(runnable);
+        }
+
+        /**
+         * remove the oldest task, non-urgent ones first
+         * @return
+         */
+        Runnable pollOldest() {
+            for (Iterator<Runnable> iterator = iterator(); iterator.hasNext(); ) {
+                Runnable runnable = iterator.next();
+                if (!isUrgent(runnable)) {
+                    iterator.remove();
+                    return runnable;
+                }
+            }
+            // all are urgent, the oldest urgent one is at tail
+            return pollLast();
+        }
+
+        private static boolean isUrgent(Runnable runnable) {
+            return runnable instanceof StageTask && ((StageTask) runnable).isUrgent();
+        }
+    }
+
+    private final ThreadPoolExecutor[] mStages = new ThreadPoolExecutor[STAGE_NAMES.length];
+
+    private LoaderExecutor(Builder builder) {
+        for (int stage = 0; stage < mStages.length; ++stage) {
+            mStages[stage] = createStage(STAGE_NAMES[stage], STAGE_PRIORITIES[stage],
+                    builder.mThreads[stage], builder.mQueueCapacities[stage]);
+        }
+    }
+
+    private static ThreadPoolExecutor createStage(final String name, final int priority, int threads, int queueCapacity) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // keep UI thread smooth, loader threads run in background priority
+                        Process.setThreadPriority(priority);
+                        r.run();
+                    }
+                }, "ImageLoader-" + name + "-" + mCount.getAndIncrement());
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new StageQueue(queueCapacity), threadFactory, DROP_OLDEST_POLICY);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * drop the oldest queued task and retry, the dropped one is notified
+     */
+    private static final RejectedExecutionHandler DROP_OLDEST_POLICY = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                notifyDropped(r);
+                return;
+            }
+            notifyDropped(((StageQueue) executor.getQueue()).pollOldest());
+            executor.execute(r);
+        }
+    };
+
+    private static void notifyDropped(Runnable r) {
+        if (r instanceof StageTask) {
+            ((StageTask) r).onDropped();
+        }
+    }
+
+    /**
+     * run task in the stage
+     * @param stage one of STAGE_NETWORK, STAGE_DISK, STAGE_DECODE and STAGE_ENCODE
+     * @param task
+     */
+    public void execute(int stage, Runnable task) {
+        mStages[stage].execute(task);
+    }
+
+    /**
+     * Move a queued task to the head of its stage queue, e.g. a view starts waiting for it after it's queued.
+     * Nothing is done if it has been taken by a thread or dropped.
+     * @param stage
+     * @param task it should be urgent now, otherwise it's queued at tail again
+     */
+    public void promote(int stage, StageTask task) {
+        ThreadPoolExecutor executor = mStages[stage];
+        if (executor.remove(task)) {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * get queue of the stage, used for debugging and tuning
+     * @param stage
+     * @return
+     */
+    public BlockingQueue<Runnable> getQueue(int stage) {
+        return mStages[stage].getQueue();
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor executor : mStages) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Builder of LoaderExecutor, threads and queue capacity of each stage can be tuned.
+     */
+    public static class Builder {
+        private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+        private final int[] mThreads = {
+                4,                                  // network, most time is waiting for I/O
+                2,                                  // disk
+                Math.max(1, Math.min(CPU_COUNT - 1, 4)),  // decode, CPU bound, leave a core for UI thread
+                1                                   // encode, only for next launches
+        };
+        private final int[] mQueueCapacities = {128, 128, 64, 32};
+
+        public Builder setStage(int stage, int threads, int queueCapacity) {
+            if (threads <= 0 || queueCapacity <= 0) {
+                throw new IllegalArgumentException("threads and queueCapacity must be positive");
+            }
+            mThreads[stage] = threads;
+            mQueueCapacities[stage] = queueCapacity;
+            return this;
+        }
+
+        public LoaderExecutor build() {
+            return new LoaderExecutor(this);
+        }
+    }
+}
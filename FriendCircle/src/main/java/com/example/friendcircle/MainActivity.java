@@ -3,6 +3,8 @@ package com.example.friendcircle;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -11,22 +13,50 @@ import android.widget.Toast;
 import com.example.friendcircle.bean.TweetBean;
 import com.example.friendcircle.bean.UserBean;
 
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
     private RecyclerView mRecyclerView;
     private SwipeRefreshLayout mRefreshLayout;
     private ImageLoader mImageLoader;
+    // pages of tweets shown in list
+    private PagedTweetSource mTweetSource;
 
     /**
      * below 2 fields is from ImageLoader, we should copy pointer to avoid data conflict when refresh
      */
-    public LinkedList<TweetBean> mTweetList;   // tweets list
+    public TweetFeed mTweetList;   // tweets of the first page
     public UserBean mUser;
 
     private RecyclerView.OnScrollListener onScrollListener;
 
+    // tweets of current load are being shown batch by batch while the feed is downloading
+    private boolean mTweetsStreaming;
+
+    // tweets shown now are from snapshot, they are replaced by the ones from network whenever they arrive
+    private boolean mShowingSnapshot;
+
+    // tweets of current load are collected until it's done, then diffed with the shown ones
+    private boolean mTweetsHeld;
+    // generation of the latest load of user and first page, callbacks of former loads are ignored
+    private int mLoadGeneration;
+    // diff of refreshed tweets is calculated on it
+    private final ExecutorService mDiffExecutor = Executors.newSingleThreadExecutor();
+    // increased for each refresh, diff of an older one is not applied
+    private int mDiffGeneration;
+
+    // images of how many tweets ahead of visible ones in scroll direction are prefetched
+    private static final int PREFETCH_AHEAD_COUNT = TweetListAdapter.LOAD_TWEETS_NUM_EACH_TIME;
+    // rows bound by RecyclerView prefetch besides the next one, fewer than the ones whose images are prefetched
+    private static final int PREFETCH_ROW_COUNT = 2;
+
+    // tweets are requested page by page, and at most these pages are kept in memory
+    private static final int TWEETS_PAGE_SIZE = 20;
+    private static final int MAX_PAGES_IN_MEMORY = 5;
+
     // because the images included in given url cannot be access, use my own test url.
     private static final String USER_URL = "http://192.168.3.16/test/user";    //"http://thoughtworks-ios.herokuapp.com/user/jsmith"
     private static final String TWEETS_LIST_URL = "http://192.168.3.16/test/tweets";   //"http://thoughtworks-ios.herokuapp.com/user/jsmith/tweets"
@@ -36,10 +66,19 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         mImageLoader = new ImageLoader(getApplicationContext(), mCallBack);
+        mTweetSource = new PagedTweetSource(new PagedTweetSource.PageLoader() {
+            @Override
+            public void loadPage(String url, ImageLoader.TweetsPageCallBack callBack) {
+                mImageLoader.loadTweetsPage(url, callBack);
+            }
+        }, TWEETS_LIST_URL, TWEETS_PAGE_SIZE, MAX_PAGES_IN_MEMORY);
+        mTweetSource.setListener(mTweetSourceListener);
         mRecyclerView = findViewById(R.id.tweet_list);
-        LinearLayoutManager linearLayoutManager =  new LinearLayoutManager(this,LinearLayoutManager.VERTICAL,false);
-        mRecyclerView.setLayoutManager(linearLayoutManager);
-        mRecyclerView.setAdapter(new TweetListAdapter(MainActivity.this, mImageLoader));
+        // rows ahead are created and bound in idle time of frames, with their images requested
+        TweetLayoutManager layoutManager = new TweetLayoutManager(this);
+        layoutManager.setExtraPrefetchItemCount(PREFETCH_ROW_COUNT);
+        mRecyclerView.setLayoutManager(layoutManager);
+        mRecyclerView.setAdapter(new TweetListAdapter(MainActivity.this, mImageLoader, mTweetSource));
 
         // set onScrollListener
         onScrollListener = new RecyclerView.OnScrollListener() {
@@ -52,6 +91,14 @@ public class MainActivity extends AppCompatActivity {
 
                 LinearLayoutManager manager = (LinearLayoutManager) recyclerView.getLayoutManager();
 
+                // rows passing by in a fling are not worth loading, load images of rows where it stops
+                if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+                    mImageLoader.pause();
+                } else if (mImageLoader.isPaused()) {
+                    mImageLoader.resume();
+                    updatePrefetchWindow(flagPullup ? 1 : -1);
+                }
+
                 // when current state is idle
                 if (newState == RecyclerView.SCROLL_STATE_IDLE) {
                     //last visiable item position
@@ -60,7 +107,7 @@ public class MainActivity extends AppCompatActivity {
 
                     // if scroll to end and scroll action is pull up, we should load more tweets
                     if (lastVisibleItem == (totalItemCount - 1) && flagPullup) {
-                        loadMoreTweets(mImageLoader);
+                        loadMoreTweets();
                     }
                 }
             }
@@ -75,6 +122,8 @@ public class MainActivity extends AppCompatActivity {
                 } else {
                     flagPullup = false;
                 }
+
+                updatePrefetchWindow(dy);
             }
         };
         mRecyclerView.addOnScrollListener(onScrollListener);
@@ -85,41 +134,90 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onRefresh() {
                 Log.w(TAG, "refresh...");
-                mImageLoader.startFetchData(USER_URL, TWEETS_LIST_URL);
+                // batches of the former load are not wanted any longer
+                mTweetsStreaming = false;
+                mTweetsHeld = false;
+                mLoadGeneration = mImageLoader.startFetchData(USER_URL, mTweetSource.getPageUrl(0));
             }
         });
 
-        // start fetch data from network
-        mImageLoader.startFetchData(USER_URL, TWEETS_LIST_URL);
+        // show the last loaded tweets at once, and refresh them from network
+        if (mImageLoader.loadSnapshot()) {
+            mShowingSnapshot = true;
+            mTweetList = mImageLoader.getmTweetList();
+            mUser = mImageLoader.getmUser();
+            showFirstTweets();
+            mRefreshLayout.setRefreshing(true);
+        }
+
+        // start fetch user and the first page from network
+        mLoadGeneration = mImageLoader.startFetchData(USER_URL, mTweetSource.getPageUrl(0));
     }
 
     /**
-     * load more tweets when pulling up
-     * @param imageLoader
+     * load the next page when pulling up at the end, it's usually loaded before user reaches the end
      */
-    private void loadMoreTweets(ImageLoader imageLoader) {
+    private void loadMoreTweets() {
         // cancel refresh when pull up to load more
         if (mRefreshLayout.isRefreshing()) {
             mRefreshLayout.setRefreshing(false);
         }
 
-        int currentAdapted = 0;
-        if (mRecyclerView.getAdapter() instanceof TweetListAdapter
-                && null != ((TweetListAdapter)mRecyclerView.getAdapter()).getTweetList()) {
-            currentAdapted = ((TweetListAdapter)mRecyclerView.getAdapter()).getTweetList().size();
-        }
-        if (null == mTweetList || currentAdapted == mTweetList.size()) {
+        if (mTweetSource.isLastPageLoaded()) {
             System.out.println("no more tweet data");
             return;
         }
+        mTweetSource.loadNextPage();
+    }
+
+    /**
+     * tell adapter which tweets are changed, positions of adapter have header
+     */
+    private PagedTweetSource.Listener mTweetSourceListener = new PagedTweetSource.Listener() {
+        @Override
+        public void onTweetsInserted(int position, int count) {
+            TweetListAdapter adapter = (TweetListAdapter) mRecyclerView.getAdapter();
+            adapter.notifyItemRangeInserted(position + (adapter.hasHeader() ? 1 : 0), count);
+        }
+
+        @Override
+        public void onTweetsChanged(int position, int count) {
+            TweetListAdapter adapter = (TweetListAdapter) mRecyclerView.getAdapter();
+            adapter.notifyItemRangeChanged(position + (adapter.hasHeader() ? 1 : 0), count);
+        }
+
+        @Override
+        public void onPageFailed() {
+            showErrorPage();
+        }
+    };
 
-        // add 5 more
-        LinkedList<TweetBean> tweetsToAdapter = ((TweetListAdapter)mRecyclerView.getAdapter()).getTweetList();
-        for (int i = currentAdapted; i < currentAdapted + TweetListAdapter.LOAD_TWEETS_NUM_EACH_TIME
-                && i < mTweetList.size(); ++i) {
-            tweetsToAdapter.add(mTweetList.get(i));
+    /**
+     * prefetch images of visible tweets and some tweets ahead in scroll direction
+     * @param dy scroll direction, greater than 0 when pulling up
+     */
+    private void updatePrefetchWindow(int dy) {
+        if (0 == mTweetSource.size() || !(mRecyclerView.getAdapter() instanceof TweetListAdapter)) return;
+
+        LinearLayoutManager manager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
+        int first = manager.findFirstVisibleItemPosition();
+        int last = manager.findLastVisibleItemPosition();
+        if (RecyclerView.NO_POSITION == first || RecyclerView.NO_POSITION == last) return;
+
+        // adapter positions to positions in tweets list
+        if (((TweetListAdapter) mRecyclerView.getAdapter()).hasHeader()) {
+            --first;
+            --last;
+        }
+        // rows bound ahead by prefetch are not where user is reading
+        mTweetSource.setReadingPosition(first);
+        if (dy >= 0) {
+            last += PREFETCH_AHEAD_COUNT;
+        } else {
+            first -= PREFETCH_AHEAD_COUNT;
         }
-        mRecyclerView.getAdapter().notifyDataSetChanged();
+        mImageLoader.updatePrefetchWindow(mTweetSource.asList(), first, last + 1);
+        ((TweetListAdapter) mRecyclerView.getAdapter()).prefetchTexts(mTweetSource.asList(), first, last + 1);
     }
 
     /**
@@ -127,47 +225,204 @@ public class MainActivity extends AppCompatActivity {
      */
     private ImageLoader.LoaderCallBack mCallBack = new ImageLoader.LoaderCallBack() {
         @Override
-        public void onLoadDone(final ImageLoader imageLoader) {
+        public void onTweetsLoaded(ImageLoader imageLoader, int generation, List<TweetBean> tweets,
+                                   boolean isFirstBatch) {
+            // a former load replaced by refresh
+            if (generation != mLoadGeneration) return;
+
+            if (isFirstBatch) {
+                // This refresh action has been cancelled
+                if (isLoadCancelled()) {
+                    return;
+                }
+
+                mTweetList = TweetFeed.copyOf(tweets);
+                mUser = imageLoader.getmUser();
+
+                // tweets are shown, keep them until the whole first page arrives, then change only what differs
+                if (mTweetSource.size() > 0) {
+                    mTweetsHeld = true;
+                    return;
+                }
+
+                // show the first screen now, the rest of feed is still downloading
+                mShowingSnapshot = false;
+                mRefreshLayout.setRefreshing(false);
+                mTweetsStreaming = true;
+                showFirstTweets();
+            } else if (mTweetsStreaming) {
+                // the rest of the first page
+                mTweetList = mTweetList.plus(tweets);
+                mTweetSource.appendToFirstPage(tweets);
+            } else if (mTweetsHeld) {
+                mTweetList = mTweetList.plus(tweets);
+            }
+        }
+
+        @Override
+        public void onLoadDone(final ImageLoader imageLoader, int generation) {
+            if (generation != mLoadGeneration) return;
+
+            // all tweets have been shown batch by batch
+            if (mTweetsStreaming) {
+                mTweetsStreaming = false;
+                mTweetSource.finishFirstPage();
+                return;
+            }
+
+            // the whole first page has arrived
+            if (mTweetsHeld) {
+                mTweetsHeld = false;
+                mShowingSnapshot = false;
+                mRefreshLayout.setRefreshing(false);
+                refreshTweets();
+                return;
+            }
+
             // This refresh action has been cancelled
-            if (null != mTweetList && !mRefreshLayout.isRefreshing()) {
+            if (isLoadCancelled()) {
                 return;
             }
 
             // set UI show no refreshing
+            mShowingSnapshot = false;
             mRefreshLayout.setRefreshing(false);
 
             // copy a pointer avoid to data conflict when refresh
             mTweetList = imageLoader.getmTweetList();
             mUser = imageLoader.getmUser();
-
-            // just show 5 of them
-            final LinkedList<TweetBean> tweetsToAdapter = new LinkedList<>();
-            if (null != mTweetList) {
-                for (int i = 0; i < mTweetList.size() && i < TweetListAdapter.LOAD_TWEETS_NUM_EACH_TIME; ++i) {
-                    tweetsToAdapter.add(mTweetList.get(i));
-                }
-            }
-            if (mRecyclerView.getAdapter() instanceof TweetListAdapter) {
-                TweetListAdapter adapter = (TweetListAdapter)mRecyclerView.getAdapter();
-                adapter.setmUser(mUser);
-                adapter.setTweetList(tweetsToAdapter);
-                adapter.notifyDataSetChanged();
+            if (mTweetSource.size() > 0) {
+                refreshTweets();
+            } else {
+                showFirstTweets();
+                mTweetSource.finishFirstPage();
             }
         }
 
         @Override
-        public void onLoadFailure(ImageLoader imageLoader) {
+        public void onLoadFailure(ImageLoader imageLoader, int generation) {
+            if (generation != mLoadGeneration) return;
+
+            // feed is broken after some tweets have been shown, keep them
+            if (mTweetsStreaming) {
+                mTweetsStreaming = false;
+                showErrorPage();
+                return;
+            }
+
+            // refreshed tweets are broken, keep the shown ones
+            if (mTweetsHeld) {
+                mTweetsHeld = false;
+                mShowingSnapshot = false;
+                mRefreshLayout.setRefreshing(false);
+                showErrorPage();
+                return;
+            }
+
             // This refresh action has been cancelled
-            if (null != mTweetList && !mRefreshLayout.isRefreshing()) {
+            if (isLoadCancelled()) {
                 return;
             }
 
-            // set UI show no refreshing
+            // set UI show no refreshing, tweets of snapshot are kept
+            mShowingSnapshot = false;
             mRefreshLayout.setRefreshing(false);
             showErrorPage();
         }
     };
 
+    /**
+     * @return whether refresh action has been cancelled by pulling up, tweets of snapshot are always refreshed
+     */
+    private boolean isLoadCancelled() {
+        return null != mTweetList && !mRefreshLayout.isRefreshing() && !mShowingSnapshot;
+    }
+
+    /**
+     * show user and the first page of mTweetList, and prefetch images of them
+     */
+    private void showFirstTweets() {
+        mTweetSource.setFirstPage(null != mTweetList ? mTweetList : TweetFeed.empty());
+        if (mRecyclerView.getAdapter() instanceof TweetListAdapter) {
+            TweetListAdapter adapter = (TweetListAdapter)mRecyclerView.getAdapter();
+            adapter.setmUser(mUser);
+            adapter.notifyDataSetChanged();
+            adapter.prefetchTexts(mTweetSource.asList(), 0,
+                    TweetListAdapter.LOAD_TWEETS_NUM_EACH_TIME + PREFETCH_AHEAD_COUNT);
+        }
+
+        // prefetch the first screen and some more
+        mImageLoader.updatePrefetchWindow(mTweetList, 0,
+                TweetListAdapter.LOAD_TWEETS_NUM_EACH_TIME + PREFETCH_AHEAD_COUNT);
+    }
+
+    /**
+     * Replace the shown tweets with user and the first page of mTweetList. Their diff is calculated in sub-thread,
+     * then only the rows which are inserted, removed, moved or changed are notified.
+     */
+    private void refreshTweets() {
+        if (!(mRecyclerView.getAdapter() instanceof TweetListAdapter)) return;
+        final TweetListAdapter adapter = (TweetListAdapter) mRecyclerView.getAdapter();
+        final TweetFeed newTweets = null != mTweetList ? mTweetList : TweetFeed.empty();
+        final UserBean newUser = mUser;
+        final TweetFeed oldTweets = TweetFeed.copyOf(mTweetSource.asList());
+        final int version = mTweetSource.getVersion();
+        final int generation = ++mDiffGeneration;
+
+        mDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                        new TweetDiffCallback(oldTweets, newTweets), true);
+                mRecyclerView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mDiffGeneration || isFinishing()) return;
+
+                        final boolean hadHeader = adapter.hasHeader();
+                        mTweetSource.setFirstPage(newTweets);
+                        adapter.setmUser(newUser);
+                        if (version + 1 != mTweetSource.getVersion() || hadHeader != adapter.hasHeader()) {
+                            // positions have changed while diffing, the diff doesn't fit them any longer
+                            adapter.notifyDataSetChanged();
+                        } else {
+                            final int offset = hadHeader ? 1 : 0;
+                            if (hadHeader) {
+                                adapter.notifyItemChanged(0);
+                            }
+                            result.dispatchUpdatesTo(new ListUpdateCallback() {
+                                @Override
+                                public void onInserted(int position, int count) {
+                                    adapter.notifyItemRangeInserted(position + offset, count);
+                                }
+
+                                @Override
+                                public void onRemoved(int position, int count) {
+                                    adapter.notifyItemRangeRemoved(position + offset, count);
+                                }
+
+                                @Override
+                                public void onMoved(int fromPosition, int toPosition) {
+                                    adapter.notifyItemMoved(fromPosition + offset, toPosition + offset);
+                                }
+
+                                @Override
+                                public void onChanged(int position, int count, Object payload) {
+                                    adapter.notifyItemRangeChanged(position + offset, count, payload);
+                                }
+                            });
+                        }
+                        mTweetSource.finishFirstPage();
+                        mImageLoader.updatePrefetchWindow(newTweets, 0,
+                                TweetListAdapter.LOAD_TWEETS_NUM_EACH_TIME + PREFETCH_AHEAD_COUNT);
+                        adapter.prefetchTexts(newTweets, 0,
+                                TweetListAdapter.LOAD_TWEETS_NUM_EACH_TIME + PREFETCH_AHEAD_COUNT);
+                    }
+                });
+            }
+        });
+    }
+
     private void showErrorPage() {
         Toast.makeText(this, R.string.network_access_error, Toast.LENGTH_LONG).show();
     }
@@ -176,5 +431,6 @@ public class MainActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         mRecyclerView.removeOnScrollListener(onScrollListener);
+        mDiffExecutor.shutdownNow();
     }
 }
@@ -0,0 +1,199 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Canonical models shared by all parsed feeds. A few hundred users write tens of thousands of tweets and comments,
+ * so every sender is kept once per username, and every avatar and image url is kept once as a string.
+ * Beans of json and snapshot are built from here while they are parsed, identical ones are never retained twice.
+ *
+ * An url also has its keys of caches, see {@link UrlKeys}, they are built once with the canonical url,
+ * so the image pipeline never builds, hashes or digests them again on every load.
+ * Tables are cleared when they grow too large, models already built keep what they refer to.
+ * It's thread safely.
+ */
+public class ModelInterner {
+    // entries of each table, about the users and images of a few large feeds
+    private static final int MAX_ENTRIES = 16 * 1024;
+
+    private static final ModelInterner sDefault = new ModelInterner();
+
+    /**
+     * keys of an url in caches, the canonical url is found by the same lookup
+     */
+    public static final class UrlKeys {
+        public final String url;
+        // key in disk cache of originals, computed when it's used first
+        private String mDiskKey;
+        // key of profile -> keys of the variant decoded with it
+        private final Map<String, VariantKeys> mVariants = new HashMap<>(4);
+
+        UrlKeys(String url) {
+            this.url = url;
+        }
+
+        /**
+         * @return MD5 of url, key of the original image in disk cache
+         */
+        public synchronized String getDiskKey() {
+            if (null == mDiskKey) {
+                mDiskKey = md5(url);
+            }
+            return mDiskKey;
+        }
+
+        /**
+         * @param profile
+         * @return keys of url decoded with profile, they are built once for each profile
+         */
+        public synchronized VariantKeys getVariant(DecodeProfile profile) {
+            VariantKeys variant = mVariants.get(profile.getKey());
+            if (null == variant) {
+                variant = new VariantKeys(url + "#" + profile.getKey(), url + "#" + profile.getName());
+                mVariants.put(profile.getKey(), variant);
+            }
+            return variant;
+        }
+    }
+
+    /**
+     * keys of an url decoded with a profile
+     */
+    public static final class VariantKeys {
+        // key in memory cache
+        public final String key;
+        // variants with the same group can serve each other by scaling, see BitmapMemoryCache
+        public final String group;
+        // key in disk cache of variants, computed when it's used first
+        private String mDiskKey;
+
+        VariantKeys(String key, String group) {
+            this.key = key;
+            this.group = group;
+        }
+
+        /**
+         * @return MD5 of key, key of the variant in disk cache
+         */
+        public synchronized String getDiskKey() {
+            if (null == mDiskKey) {
+                mDiskKey = md5(key);
+            }
+            return mDiskKey;
+        }
+    }
+
+    // canonical urls and their keys
+    private final Map<String, UrlKeys> mUrls = new HashMap<>();
+    private final Map<String, TweetBean.SenderBean> mSenders = new HashMap<>();
+
+    /**
+     * @return interner used by parsers
+     */
+    public static ModelInterner getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * @param url
+     * @return the canonical instance equal to url
+     */
+    public synchronized String internUrl(String url) {
+        if (null == url) return null;
+        return getUrlKeys(url).url;
+    }
+
+    /**
+     * @param url url of image, null is keyed as "null" which is never loaded
+     * @return keys of url, the same instance for all equal urls until the table is cleared
+     */
+    public synchronized UrlKeys getUrlKeys(String url) {
+        url = String.valueOf(url);
+        UrlKeys keys = mUrls.get(url);
+        if (null == keys) {
+            if (mUrls.size() >= MAX_ENTRIES) {
+                mUrls.clear();
+            }
+            keys = new UrlKeys(url);
+            mUrls.put(url, keys);
+        }
+        return keys;
+    }
+
+    /**
+     * The sender of username is shared by all tweets and comments. When nick or avatar has changed,
+     * models parsed from now on share the new one, the former one is left to older models.
+     * @param username
+     * @param nick
+     * @param avatar
+     * @return
+     */
+    public synchronized TweetBean.SenderBean sender(String username, String nick, String avatar) {
+        avatar = internUrl(avatar);
+        if (null == username) {
+            return new TweetBean.SenderBean(null, nick, avatar);
+        }
+
+        TweetBean.SenderBean sender = mSenders.get(username);
+        if (null != sender && equals(nick, sender.getNick()) && equals(avatar, sender.getAvatar())) {
+            return sender;
+        }
+        if (null == sender && mSenders.size() >= MAX_ENTRIES) {
+            mSenders.clear();
+        }
+        // username of the former sender is reused, it's the same string
+        sender = new TweetBean.SenderBean(null != sender ? sender.getUsername() : username, nick, avatar);
+        mSenders.put(sender.getUsername(), sender);
+        return sender;
+    }
+
+    /**
+     * @return how many senders and urls are kept
+     */
+    public synchronized int size() {
+        return mUrls.size() + mSenders.size();
+    }
+
+    public synchronized void clear() {
+        mUrls.clear();
+        mSenders.clear();
+    }
+
+    /**
+     * decode with MD5 for key of disk cache
+     * @param key
+     * @return
+     */
+    private static String md5(String key) {
+        String md5Val;
+        try {
+            final MessageDigest mDigest = MessageDigest.getInstance("MD5");
+            mDigest.update(key.getBytes());
+            md5Val = bytesToHexString(mDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            md5Val = String.valueOf(key.hashCode());
+        }
+        return md5Val;
+    }
+
+    private static String bytesToHexString(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < bytes.length; i++) {
+            String hex = Integer.toHexString(0xFF & bytes[i]);
+            if (hex.length() == 1) {
+                sb.append('0');
+            }
+            sb.append(hex);
+        }
+        return sb.toString();
+    }
+
+    private static boolean equals(String a, String b) {
+        return null == a ? null == b : a.equals(b);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.friendcircle;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+/**
+ * Container of tweet images, at most 9. Its image views are created once and kept, rebinding a tweet only
+ * shows the first count of them, so nothing is allocated or removed while scrolling.
+ *
+ * Images are laid out in one pass: a single image keeps its aspect ratio within max size of single image,
+ * 4 images are in 2 columns, others are in 3 columns. Cells of grid are square and a third of width each.
+ */
+public class NineGridView extends ViewGroup {
+    public static final int MAX_IMAGE_COUNT = 9;
+    private static final int COLUMN_COUNT = 3;
+    private static final int COLUMN_COUNT_OF_FOUR = 2;
+
+    // space between cells
+    private final int mSpacing;
+    private final int mSingleImageMaxWidth;
+    private final int mSingleImageMaxHeight;
+
+    // how many image views are shown
+    private int mImageCount;
+    // size of a grid cell, computed in onMeasure
+    private int mCellSize;
+
+    public NineGridView(Context context) {
+        this(context, null);
+    }
+
+    public NineGridView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public NineGridView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        Resources res = context.getResources();
+        // the same gap as margins of images on both sides
+        mSpacing = 2 * res.getDimensionPixelOffset(R.dimen.image_margins);
+        mSingleImageMaxWidth = res.getDimensionPixelOffset(R.dimen.max_width_single_image);
+        mSingleImageMaxHeight = res.getDimensionPixelOffset(R.dimen.max_height_single_image);
+    }
+
+    /**
+     * show the first count image views, the others are hidden and kept for later tweets
+     * @param count it's not more than {@link #MAX_IMAGE_COUNT}
+     */
+    public void setImageCount(int count) {
+        count = Math.max(0, Math.min(count, MAX_IMAGE_COUNT));
+        if (count == mImageCount) return;
+
+        // image views are created the first time they are needed, then never removed
+        for (int i = getChildCount(); i < count; ++i) {
+            addViewInLayout(createImageView(), i, generateDefaultLayoutParams(), true);
+        }
+        for (int i = 0, childCount = getChildCount(); i < childCount; ++i) {
+            getChildAt(i).setVisibility(i < count ? VISIBLE : GONE);
+        }
+        mImageCount = count;
+        requestLayout();
+        invalidate();
+    }
+
+    public int getImageCount() {
+        return mImageCount;
+    }
+
+    /**
+     * @param index less than {@link #getImageCount()}
+     * @return
+     */
+    public ImageView getImageView(int index) {
+        if (index < 0 || index >= mImageCount) {
+            throw new IndexOutOfBoundsException("index " + index + ", count " + mImageCount);
+        }
+        return (ImageView) getChildAt(index);
+    }
+
+    private ImageView createImageView() {
+        ImageView imageView = new ImageView(getContext());
+        imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        // a single image is measured by its bitmap within max size, grid cells are measured exactly
+        imageView.setAdjustViewBounds(true);
+        imageView.setMaxWidth(mSingleImageMaxWidth);
+        imageView.setMaxHeight(mSingleImageMaxHeight);
+        return imageView;
+    }
+
+    private int getColumnCount() {
+        return 4 == mImageCount ? COLUMN_COUNT_OF_FOUR : COLUMN_COUNT;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        final int contentWidth = Math.max(0, width - getPaddingLeft() - getPaddingRight());
+        int contentHeight = 0;
+
+        if (1 == mImageCount) {
+            View child = getChildAt(0);
+            child.measure(MeasureSpec.makeMeasureSpec(Math.min(contentWidth, mSingleImageMaxWidth), MeasureSpec.AT_MOST),
+                    MeasureSpec.makeMeasureSpec(mSingleImageMaxHeight, MeasureSpec.AT_MOST));
+            contentHeight = child.getMeasuredHeight();
+        } else if (mImageCount > 1) {
+            mCellSize = Math.max(0, (contentWidth - (COLUMN_COUNT - 1) * mSpacing) / COLUMN_COUNT);
+            final int cellSpec = MeasureSpec.makeMeasureSpec(mCellSize, MeasureSpec.EXACTLY);
+            for (int i = 0; i < mImageCount; ++i) {
+                getChildAt(i).measure(cellSpec, cellSpec);
+            }
+            final int columnCount = getColumnCount();
+            final int rowCount = (mImageCount + columnCount - 1) / columnCount;
+            contentHeight = rowCount * mCellSize + (rowCount - 1) * mSpacing;
+        }
+
+        final int height = 0 == mImageCount ? 0 : contentHeight + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final int left = getPaddingLeft();
+        final int top = getPaddingTop();
+        if (1 == mImageCount) {
+            View child = getChildAt(0);
+            child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+            return;
+        }
+
+        final int columnCount = getColumnCount();
+        for (int i = 0; i < mImageCount; ++i) {
+            final int cellLeft = left + (i % columnCount) * (mCellSize + mSpacing);
+            final int cellTop = top + (i / columnCount) * (mCellSize + mSpacing);
+            getChildAt(i).layout(cellLeft, cellTop, cellLeft + mCellSize, cellTop + mCellSize);
+        }
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+}
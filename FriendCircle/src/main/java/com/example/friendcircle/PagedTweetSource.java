@@ -0,0 +1,408 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Paged data source of tweets behind TweetListAdapter. Pages are requested from tweets endpoint by
+ * offset and limit, e.g. "tweets?offset=20&limit=20", the server answers a Json array of at most limit tweets,
+ * and fewer than limit means it's the last page.
+ *
+ * The next page is requested before user reaches the end of loaded tweets. At most maxPagesInMemory pages
+ * are kept, the one farthest from where user is reading is dropped, its positions are kept and it's requested
+ * again when user scrolls back to it. The first page is loaded with user by ImageLoader, and given to it.
+ * A page which failed is not requested again by binding until a backoff has passed, the next page is also
+ * retried at once by {@link #loadNextPage()}.
+ * It's used in UI thread only.
+ */
+public class PagedTweetSource {
+    // a failed page is requested again by binding after this delay, it's doubled for each failure in a row
+    private static final long RETRY_BASE_DELAY_MS = 2000;
+    private static final long RETRY_MAX_DELAY_MS = 60000;
+
+    /**
+     * a page whose last request failed
+     */
+    private static class PageFailure {
+        // failures in a row
+        int count;
+        // when it can be requested again by binding
+        long retryAt;
+    }
+
+    /**
+     * loader of a page, the callback is called on UI thread
+     */
+    public interface PageLoader {
+        void loadPage(String url, ImageLoader.TweetsPageCallBack callBack);
+    }
+
+    /**
+     * tells adapter which positions are changed
+     */
+    public interface Listener {
+        void onTweetsInserted(int position, int count);
+
+        void onTweetsChanged(int position, int count);
+
+        void onPageFailed();
+    }
+
+    private final PageLoader mPageLoader;
+    private final String mBaseUrl;
+    private final int mPageSize;
+    private final int mMaxPagesInMemory;
+    // next page is requested when user reaches this count from the end
+    private final int mPrefetchDistance;
+    private Listener mListener;
+
+    // tweets of pages, null when it's dropped
+    private final List<TweetFeed> mPages = new ArrayList<>();
+    // position of the first tweet of pages, and how many tweets they have
+    private final List<Integer> mPageStarts = new ArrayList<>();
+    private final List<Integer> mPageSizes = new ArrayList<>();
+    private int mSize;
+
+    private final Set<Integer> mLoadingPages = new HashSet<>();
+    // pages whose last request failed
+    private final Map<Integer, PageFailure> mFailedPages = new HashMap<>();
+    private boolean mFirstPageDone;
+    private boolean mLastPageLoaded;
+    // position bound last, the next page is loaded when it's near the end
+    private int mLastBound;
+    // position user is reading, pages far from it are dropped first
+    private int mReadingPosition;
+    // increased when first page is set again, pages loaded for former feed are discarded
+    private int mGeneration;
+    // increased whenever positions are inserted or the feed is set again
+    private int mVersion;
+
+    /**
+     * @param pageLoader
+     * @param baseUrl url of tweets endpoint
+     * @param pageSize
+     * @param maxPagesInMemory at least 2, the page being read and the next one
+     */
+    public PagedTweetSource(PageLoader pageLoader, String baseUrl, int pageSize, int maxPagesInMemory) {
+        mPageLoader = pageLoader;
+        mBaseUrl = baseUrl;
+        mPageSize = pageSize;
+        mMaxPagesInMemory = Math.max(2, maxPagesInMemory);
+        mPrefetchDistance = Math.max(1, pageSize / 2);
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @param page
+     * @return url of page
+     */
+    public String getPageUrl(int page) {
+        return mBaseUrl + (mBaseUrl.indexOf('?') < 0 ? '?' : '&')
+                + "offset=" + page * mPageSize + "&limit=" + mPageSize;
+    }
+
+    /**
+     * Start a new feed with the first page, whose tweets may still be being parsed.
+     * Adapter should be notified that all data has changed.
+     * @param tweets
+     */
+    public void setFirstPage(TweetFeed tweets) {
+        ++mGeneration;
+        ++mVersion;
+        mPages.clear();
+        mPageStarts.clear();
+        mPageSizes.clear();
+        mLoadingPages.clear();
+        mFailedPages.clear();
+        mFirstPageDone = false;
+        mLastPageLoaded = false;
+        mLastBound = 0;
+        mReadingPosition = 0;
+
+        mPages.add(tweets);
+        mPageStarts.add(0);
+        mPageSizes.add(tweets.size());
+        mSize = tweets.size();
+    }
+
+    /**
+     * more tweets of the first page are parsed
+     * @param tweets
+     */
+    public void appendToFirstPage(List<TweetBean> tweets) {
+        if (1 != mPages.size() || mFirstPageDone || tweets.isEmpty()) return;
+
+        final int position = mSize;
+        mPages.set(0, mPages.get(0).plus(tweets));
+        mPageSizes.set(0, mPages.get(0).size());
+        mSize += tweets.size();
+        ++mVersion;
+        if (null != mListener) {
+            mListener.onTweetsInserted(position, tweets.size());
+        }
+    }
+
+    /**
+     * all tweets of the first page are given, the next pages can be loaded now
+     */
+    public void finishFirstPage() {
+        if (mPages.isEmpty()) return;
+        mFirstPageDone = true;
+        // server which doesn't know paging answers the whole feed
+        mLastPageLoaded = mSize > mPageSize;
+        // user has reached the end while the first page is being parsed
+        if (mLastBound >= mSize - mPrefetchDistance) {
+            loadPage(mPages.size());
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isLastPageLoaded() {
+        return mLastPageLoaded;
+    }
+
+    /**
+     * @return version of positions, it's changed when tweets are inserted or the feed is set again
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * get tweet to be shown, and load the pages around it
+     * @param position
+     * @return null if its page has been dropped, it's being loaded again
+     */
+    public TweetBean get(int position) {
+        mLastBound = position;
+        final int page = getPageOf(position);
+        if (null == mPages.get(page) && !isBackingOff(page)) {
+            loadPage(page);
+        }
+        if (position >= mSize - mPrefetchDistance && !isBackingOff(mPages.size())) {
+            loadPage(mPages.size());
+        }
+        return peek(position);
+    }
+
+    /**
+     * Set position user is reading, e.g. the first visible one, pages far from it are dropped first.
+     * Binding doesn't change it, rows ahead are also bound by prefetch of RecyclerView.
+     * @param position
+     */
+    public void setReadingPosition(int position) {
+        mReadingPosition = Math.max(0, position);
+    }
+
+    /**
+     * get tweet without loading any page, e.g. for its id
+     * @param position
+     * @return null if its page has been dropped
+     */
+    public TweetBean peek(int position) {
+        final int page = getPageOf(position);
+        final TweetFeed tweets = mPages.get(page);
+        return null == tweets ? null : tweets.get(position - mPageStarts.get(page));
+    }
+
+    /**
+     * load the next page when user wants more, e.g. pulling up at the end, it's retried if it has failed
+     */
+    public void loadNextPage() {
+        mFailedPages.remove(mPages.size());
+        loadPage(mPages.size());
+    }
+
+    /**
+     * @return list view of loaded tweets, it doesn't load pages. Tweets of dropped pages are null
+     */
+    public List<TweetBean> asList() {
+        return new AbstractList<TweetBean>() {
+            @Override
+            public TweetBean get(int position) {
+                return peek(position);
+            }
+
+            @Override
+            public int size() {
+                return mSize;
+            }
+        };
+    }
+
+    /**
+     * @return how many pages are kept in memory
+     */
+    public int getPagesInMemory() {
+        int count = 0;
+        for (TweetFeed tweets : mPages) {
+            if (null != tweets) ++count;
+        }
+        return count;
+    }
+
+    private int getPageOf(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + mSize);
+        }
+        int index = Collections.binarySearch(mPageStarts, position);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        // skip empty pages starting at the same position
+        while (index + 1 < mPageStarts.size() && mPageStarts.get(index + 1) <= position) {
+            ++index;
+        }
+        return index;
+    }
+
+    /**
+     * @return uptime in milliseconds, backoff of failed pages is measured by it
+     */
+    long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * @param page
+     * @return whether page failed last time and its backoff hasn't passed yet
+     */
+    private boolean isBackingOff(int page) {
+        final PageFailure failure = mFailedPages.get(page);
+        return null != failure && now() < failure.retryAt;
+    }
+
+    /**
+     * @param page index of a dropped page, or the next page
+     */
+    private void loadPage(final int page) {
+        if (!mFirstPageDone || mLoadingPages.contains(page)) return;
+        if (page == mPages.size() && mLastPageLoaded) return;
+
+        mLoadingPages.add(page);
+        final int generation = mGeneration;
+        mPageLoader.loadPage(getPageUrl(page), new ImageLoader.TweetsPageCallBack() {
+            @Override
+            public void onTweetsPageLoaded(JsonParserUtil.TweetsPage tweetsPage) {
+                if (generation != mGeneration) return;
+                mLoadingPages.remove(page);
+                mFailedPages.remove(page);
+                if (page == mPages.size()) {
+                    onNextPageLoaded(tweetsPage);
+                } else {
+                    onDroppedPageLoaded(page, tweetsPage.tweets);
+                }
+            }
+
+            @Override
+            public void onTweetsPageFailed() {
+                if (generation != mGeneration) return;
+                mLoadingPages.remove(page);
+                PageFailure failure = mFailedPages.get(page);
+                if (null == failure) {
+                    failure = new PageFailure();
+                    mFailedPages.put(page, failure);
+                }
+                ++failure.count;
+                failure.retryAt = now() + Math.min(RETRY_MAX_DELAY_MS,
+                        RETRY_BASE_DELAY_MS << Math.min(failure.count - 1, 20));
+                if (null != mListener) {
+                    mListener.onPageFailed();
+                }
+            }
+        });
+    }
+
+    private void onNextPageLoaded(JsonParserUtil.TweetsPage tweetsPage) {
+        // server which doesn't know paging answers the whole feed again
+        if (tweetsPage.entryCount > mPageSize) {
+            mLastPageLoaded = true;
+            return;
+        }
+        mLastPageLoaded = tweetsPage.entryCount < mPageSize;
+
+        final int position = mSize;
+        final int count = tweetsPage.tweets.size();
+        offsetOccurrences(mPages.size(), tweetsPage.tweets);
+        mPages.add(tweetsPage.tweets);
+        mPageStarts.add(position);
+        mPageSizes.add(count);
+        mSize += count;
+        ++mVersion;
+        dropFarPages(mPages.size() - 1);
+        if (null != mListener && count > 0) {
+            mListener.onTweetsInserted(position, count);
+        }
+
+        // all tweets of it are invalid, no position is shown to ask for the next one
+        if (0 == count) {
+            loadPage(mPages.size());
+        }
+    }
+
+    private void onDroppedPageLoaded(int page, TweetFeed tweets) {
+        // feed may have changed on server meanwhile, the page keeps its positions
+        final int size = mPageSizes.get(page);
+        offsetOccurrences(page, tweets);
+        final TweetFeed.Builder pageTweets = new TweetFeed.Builder(size);
+        for (int i = 0; i < size; ++i) {
+            pageTweets.add(i < tweets.size() ? tweets.get(i) : null);
+        }
+        mPages.set(page, pageTweets.build());
+        dropFarPages(page);
+        if (null != mListener && size > 0) {
+            mListener.onTweetsChanged(mPageStarts.get(page), size);
+        }
+    }
+
+    /**
+     * Occurrences of identical tweets are counted in each page, they are moved by the page's offset so that
+     * identical tweets of different pages have different ids too. The first page keeps them, so its ids are
+     * the same as the ones of a refreshed feed.
+     * @param page
+     * @param tweets tweets of page, they are just parsed
+     */
+    private void offsetOccurrences(int page, List<TweetBean> tweets) {
+        if (0 == page) return;
+        for (int i = 0, size = tweets.size(); i < size; ++i) {
+            final TweetBean tweet = tweets.get(i);
+            if (null != tweet) {
+                tweet.setOccurrence(tweet.getOccurrence() + page * mPageSize);
+            }
+        }
+    }
+
+    /**
+     * drop pages farthest from the page user is reading until they are not more than mMaxPagesInMemory
+     * @param keptPage the page just loaded, it's never dropped
+     */
+    private void dropFarPages(int keptPage) {
+        if (0 == mSize) return;
+        final int readingPage = getPageOf(Math.min(mReadingPosition, mSize - 1));
+        while (getPagesInMemory() > mMaxPagesInMemory) {
+            int farthest = -1;
+            for (int i = 0; i < mPages.size(); ++i) {
+                if (null == mPages.get(i) || i == keptPage || i == readingPage) continue;
+                if (-1 == farthest || Math.abs(i - readingPage) > Math.abs(farthest - readingPage)) {
+                    farthest = i;
+                }
+            }
+            if (-1 == farthest) return;
+            mPages.set(farthest, null);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.friendcircle;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fetcher of Json documents through the HTTP cache of OkHttpClient, e.g. user and tweets list.
+ * Every request revalidates the cached response with its ETag or Last-Modified, so the server answers 304
+ * without body when nothing changed. The model parsed from a response is kept with its validator,
+ * when the response is validated by 304 the kept model is reused without reparsing. It's thread safely.
+ */
+public class RevalidatingFetcher {
+    // cached response is always revalidated, it's never used without asking server
+    private static final String CACHE_CONTROL_REVALIDATE = "max-age=0";
+
+    /**
+     * parse model from response body
+     * @param <T>
+     */
+    public interface Parser<T> {
+        T parse(Response response) throws IOException;
+    }
+
+    /**
+     * result of fetching
+     * @param <T>
+     */
+    public static class Result<T> {
+        public final T model;
+        // model is the one parsed before, the response is not parsed
+        public final boolean reused;
+
+        Result(T model, boolean reused) {
+            this.model = model;
+            this.reused = reused;
+        }
+    }
+
+    /**
+     * parsed model of url, with validator of the response it's parsed from
+     */
+    private static class ParsedEntry {
+        final String validator;
+        final Object model;
+
+        ParsedEntry(String validator, Object model) {
+            this.validator = validator;
+            this.model = model;
+        }
+    }
+
+    private final OkHttpClient mClient;
+    private final Map<String, ParsedEntry> mParsedEntries = new HashMap<>();
+
+    private int mParseCount;
+    private int mReuseCount;
+
+    /**
+     * @param client its cache should be set, otherwise nothing is revalidated
+     */
+    public RevalidatingFetcher(OkHttpClient client) {
+        mClient = client;
+    }
+
+    /**
+     * new call which revalidates the cached response of url
+     * @param url
+     * @return
+     */
+    public Call newCall(String url) {
+        final Request request = new Request.Builder()
+                .url(url)
+                .header("Cache-Control", CACHE_CONTROL_REVALIDATE)
+                .build();
+        return mClient.newCall(request);
+    }
+
+    /**
+     * execute the call made by {@link #newCall(String)}, reuse the model parsed before if the response is not changed
+     * @param call
+     * @param url
+     * @param parser
+     * @return null if the response is not successful
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Result<T> execute(Call call, String url, Parser<T> parser) throws IOException {
+        Response response = call.execute();
+        if (!response.isSuccessful()) {
+            response.body().close();
+            return null;
+        }
+
+        // from cache without network, or validated by 304
+        final boolean notModified = null != response.cacheResponse()
+                && (null == response.networkResponse() || 304 == response.networkResponse().code());
+        final String validator = getValidator(response);
+        if (notModified && null != validator) {
+            ParsedEntry entry;
+            synchronized (this) {
+                entry = mParsedEntries.get(url);
+            }
+            if (null != entry && validator.equals(entry.validator)) {
+                response.body().close();
+                synchronized (this) {
+                    ++mReuseCount;
+                }
+                return new Result<>((T) entry.model, true);
+            }
+        }
+
+        T model = parser.parse(response);
+        synchronized (this) {
+            ++mParseCount;
+            if (null != validator && null != model) {
+                mParsedEntries.put(url, new ParsedEntry(validator, model));
+            } else {
+                mParsedEntries.remove(url);
+            }
+        }
+        return new Result<>(model, false);
+    }
+
+    /**
+     * ETag, or Last-Modified if there is no ETag
+     * @param response
+     * @return null if response has no validator
+     */
+    private static String getValidator(Response response) {
+        String etag = response.header("ETag");
+        if (null != etag) {
+            return "ETag:" + etag;
+        }
+        String lastModified = response.header("Last-Modified");
+        if (null != lastModified) {
+            return "Last-Modified:" + lastModified;
+        }
+        return null;
+    }
+
+    public synchronized int getParseCount() {
+        return mParseCount;
+    }
+
+    public synchronized int getReuseCount() {
+        return mReuseCount;
+    }
+}
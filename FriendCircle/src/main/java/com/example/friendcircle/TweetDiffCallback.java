@@ -0,0 +1,98 @@
+package com.example.friendcircle;
+
+import android.support.v7.util.DiffUtil;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import java.util.List;
+
+/**
+ * Diff of tweets list before and after refresh, it's calculated in sub-thread.
+ * Tweets are the same item when their stable ids are equal, and the same content when everything shown is equal.
+ * Tweets of dropped pages are null, they are never the same as any other.
+ */
+public class TweetDiffCallback extends DiffUtil.Callback {
+    private final List<TweetBean> mOldTweets;
+    private final List<TweetBean> mNewTweets;
+
+    /**
+     * @param oldTweets should not be changed while diff is being calculated
+     * @param newTweets should not be changed while diff is being calculated
+     */
+    public TweetDiffCallback(List<TweetBean> oldTweets, List<TweetBean> newTweets) {
+        mOldTweets = oldTweets;
+        mNewTweets = newTweets;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldTweets.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewTweets.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+        TweetBean oldTweet = mOldTweets.get(oldPosition);
+        TweetBean newTweet = mNewTweets.get(newPosition);
+        return null != oldTweet && null != newTweet && oldTweet.getId() == newTweet.getId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+        TweetBean oldTweet = mOldTweets.get(oldPosition);
+        TweetBean newTweet = mNewTweets.get(newPosition);
+        // reused when server answers 304
+        if (oldTweet == newTweet) return true;
+        if (null == oldTweet || null == newTweet) return false;
+
+        return equals(oldTweet.getContent(), newTweet.getContent())
+                && senderEquals(oldTweet.getSender(), newTweet.getSender())
+                && imagesEquals(oldTweet.getImages(), newTweet.getImages())
+                && commentsEquals(oldTweet.getComments(), newTweet.getComments());
+    }
+
+    private static boolean equals(String a, String b) {
+        return null == a ? null == b : a.equals(b);
+    }
+
+    private static boolean senderEquals(TweetBean.SenderBean a, TweetBean.SenderBean b) {
+        if (null == a || null == b) return a == b;
+        return equals(a.getUsername(), b.getUsername())
+                && equals(a.getNick(), b.getNick())
+                && equals(a.getAvatar(), b.getAvatar());
+    }
+
+    private static boolean imagesEquals(List<TweetBean.ImagesBean> a, List<TweetBean.ImagesBean> b) {
+        if (null == a || null == b) return a == b;
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); ++i) {
+            TweetBean.ImagesBean x = a.get(i);
+            TweetBean.ImagesBean y = b.get(i);
+            if (null == x || null == y) {
+                if (x != y) return false;
+            } else if (!equals(x.getUrl(), y.getUrl())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean commentsEquals(List<TweetBean.CommentBean> a, List<TweetBean.CommentBean> b) {
+        if (null == a || null == b) return a == b;
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); ++i) {
+            TweetBean.CommentBean x = a.get(i);
+            TweetBean.CommentBean y = b.get(i);
+            if (null == x || null == y) {
+                if (x != y) return false;
+            } else if (!equals(x.getContent(), y.getContent()) || !senderEquals(x.getSender(), y.getSender())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
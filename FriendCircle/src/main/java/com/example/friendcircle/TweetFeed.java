@@ -0,0 +1,158 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of tweets shared by ImageLoader, MainActivity and TweetListAdapter.
+ * Tweets are kept in an array, so get(i) costs the same at any position.
+ *
+ * Appending returns a new feed and leaves this one as it is. Feeds appended one after another share
+ * one array which grows by doubling, so appending k tweets costs O(k) in amortized time.
+ * A feed only reads its own part of the array, so it's safe to be read in any thread.
+ */
+public final class TweetFeed extends AbstractList<TweetBean> implements RandomAccess {
+    private static final TweetFeed EMPTY = new TweetFeed(new Storage(0), 0);
+
+    /**
+     * array shared by feeds appended one after another, count is how much of it has been written
+     */
+    private static class Storage {
+        TweetBean[] items;
+        int count;
+
+        Storage(int capacity) {
+            items = new TweetBean[capacity];
+        }
+    }
+
+    private final Storage mStorage;
+    // array of storage when this feed was made, storage may have grown into a new array since
+    private final TweetBean[] mItems;
+    private final int mSize;
+
+    private TweetFeed(Storage storage, int size) {
+        mStorage = storage;
+        mItems = storage.items;
+        mSize = size;
+    }
+
+    public static TweetFeed empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param tweets
+     * @return feed of the same tweets, tweets itself if it's a feed already
+     */
+    public static TweetFeed copyOf(Collection<TweetBean> tweets) {
+        if (tweets instanceof TweetFeed) {
+            return (TweetFeed) tweets;
+        }
+        return EMPTY.plus(tweets);
+    }
+
+    @Override
+    public TweetBean get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        }
+        return mItems[index];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param tweets
+     * @return a new feed of this one followed by tweets
+     */
+    public TweetFeed plus(Collection<TweetBean> tweets) {
+        if (tweets.isEmpty()) return this;
+
+        final int newSize = mSize + tweets.size();
+        // the empty feed is shared by everyone, its storage is never grown
+        if (mSize > 0) {
+            synchronized (mStorage) {
+                // this feed is the tail of storage, write after it in place, grow storage if it's full
+                if (mStorage.count == mSize) {
+                    if (mStorage.items.length < newSize) {
+                        mStorage.items = Arrays.copyOf(mStorage.items, Math.max(newSize, mStorage.items.length * 2));
+                    }
+                    write(mStorage.items, mSize, tweets);
+                    mStorage.count = newSize;
+                    return new TweetFeed(mStorage, newSize);
+                }
+            }
+        }
+
+        // another feed has been appended after this one, or this one is empty, copy into a new storage
+        Storage storage = new Storage(Math.max(newSize, mSize * 2));
+        System.arraycopy(mItems, 0, storage.items, 0, mSize);
+        write(storage.items, mSize, tweets);
+        storage.count = newSize;
+        return new TweetFeed(storage, newSize);
+    }
+
+    private static void write(TweetBean[] items, int start, Collection<TweetBean> tweets) {
+        int i = start;
+        for (TweetBean tweet : tweets) {
+            items[i++] = tweet;
+        }
+    }
+
+    /**
+     * builds a feed in one pass, e.g. while tweets are being parsed
+     */
+    public static class Builder {
+        private TweetBean[] mItems;
+        private int mSize;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int capacity) {
+            mItems = new TweetBean[Math.max(1, capacity)];
+        }
+
+        public Builder add(TweetBean tweet) {
+            if (mSize == mItems.length) {
+                mItems = Arrays.copyOf(mItems, mSize * 2);
+            }
+            mItems[mSize++] = tweet;
+            return this;
+        }
+
+        public Builder addAll(List<TweetBean> tweets) {
+            for (int i = 0, size = tweets.size(); i < size; ++i) {
+                add(tweets.get(i));
+            }
+            return this;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        /**
+         * the builder should not be used after it
+         * @return
+         */
+        public TweetFeed build() {
+            if (0 == mSize) return EMPTY;
+            Storage storage = new Storage(0);
+            storage.items = mItems;
+            storage.count = mSize;
+            mItems = null;
+            return new TweetFeed(storage, mSize);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.friendcircle;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+/**
+ * Vertical LinearLayoutManager of tweets list which lets RecyclerView prefetch more rows ahead.
+ * LinearLayoutManager only asks for the next row while scrolling, a tweet row is tall and slow to bind
+ * with its images, so a few more rows in scroll direction are created and bound in idle time of frames.
+ * Their images are requested when they are bound, so they are in memory cache when rows show up.
+ */
+public class TweetLayoutManager extends LinearLayoutManager {
+    // rows prefetched after the next one
+    private int mExtraPrefetchItemCount;
+
+    public TweetLayoutManager(Context context) {
+        super(context, VERTICAL, false);
+    }
+
+    /**
+     * @param count rows prefetched in scroll direction besides the one LinearLayoutManager prefetches
+     */
+    public void setExtraPrefetchItemCount(int count) {
+        mExtraPrefetchItemCount = Math.max(0, count);
+    }
+
+    public int getExtraPrefetchItemCount() {
+        return mExtraPrefetchItemCount;
+    }
+
+    @Override
+    public void collectAdjacentPrefetchPositions(int dx, int dy, RecyclerView.State state,
+                                                 LayoutPrefetchRegistry layoutPrefetchRegistry) {
+        super.collectAdjacentPrefetchPositions(dx, dy, state, layoutPrefetchRegistry);
+
+        final int childCount = getChildCount();
+        if (0 == mExtraPrefetchItemCount || 0 == dy || 0 == childCount
+                || VERTICAL != getOrientation() || getReverseLayout()) {
+            return;
+        }
+
+        // the row at the edge where rows come in, and how far it's out of list
+        final boolean pullUp = dy > 0;
+        final View edge = getChildAt(pullUp ? childCount - 1 : 0);
+        final int edgePosition = getPosition(edge);
+        final int distance = Math.max(0, pullUp
+                ? getDecoratedBottom(edge) - (getHeight() - getPaddingBottom())
+                : getPaddingTop() - getDecoratedTop(edge));
+        // rows are not laid out yet, their height is guessed by the shown ones
+        final int rowHeight = Math.max(1, (getDecoratedBottom(getChildAt(childCount - 1))
+                - getDecoratedTop(getChildAt(0))) / childCount);
+
+        // the next row has been added by super
+        for (int i = 2; i <= mExtraPrefetchItemCount + 1; ++i) {
+            final int position = pullUp ? edgePosition + i : edgePosition - i;
+            if (position < 0 || position >= state.getItemCount()) break;
+            layoutPrefetchRegistry.addPosition(position, distance + (i - 1) * rowHeight);
+        }
+    }
+}
@@ -1,31 +1,25 @@
 package com.example.friendcircle;
 
 import android.app.Activity;
-import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Color;
-import android.support.v7.widget.GridLayout;
+import android.graphics.Paint;
 import android.support.v7.widget.RecyclerView;
-import android.text.Spannable;
-import android.text.SpannableStringBuilder;
+import android.text.TextPaint;
 import android.text.TextUtils;
-import android.text.style.ForegroundColorSpan;
 import android.util.Log;
 import android.util.SparseArray;
-import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewTreeObserver;
-import android.view.WindowManager;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import com.example.friendcircle.bean.TweetBean;
 import com.example.friendcircle.bean.UserBean;
 
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author yaobaocheng
@@ -34,24 +28,25 @@ import java.util.List;
 public class TweetListAdapter extends RecyclerView.Adapter<TweetListAdapter.BaseViewHolder> {
     private static final String TAG = "TweetListAdapter";
     private Activity mContext;
-    private LinkedList<TweetBean> mTweetList;
+    private PagedTweetSource mTweetSource;
     private UserBean mUser;
     private ImageLoader mImageLoader;
 
-    public LinkedList<TweetBean> getTweetList() {
-        return mTweetList;
-    }
-
-    public void setTweetList(LinkedList<TweetBean> mTweetList) {
-        this.mTweetList = mTweetList;
-    }
-
     public void setmUser(UserBean mUser) {
         this.mUser = mUser;
     }
 
-    // all contents' expand/collapse state
-    private SparseArray<Integer> mTextStateList;
+    // layouts of contents, built in sub-thread and cached
+    private final ContentLayoutCache mContentLayoutCache;
+    // ids of tweets whose contents are expanded
+    private final Set<Long> mExpandedContents = new HashSet<>();
+
+    // texts of comments, built in sub-thread and cached
+    private final CommentTextCache mCommentTextCache;
+    // ids of tweets whose comments are all shown
+    private final Set<Long> mExpandedComments = new HashSet<>();
+    // comments shown before "show all"
+    private static final int COLLAPSED_COMMENT_COUNT = 5;
 
     // whether has header view
     public boolean hasHeader() {
@@ -64,25 +59,53 @@ public class TweetListAdapter extends RecyclerView.Adapter<TweetListAdapter.Base
     private static final int TYPE_HEADER         = 0;  //header layout flag
     private static final int TYPE_NORMAL         = 1;  //tweet layout flag
 
+    // id of header, ids of tweets are never 0
+    private static final long HEADER_ID = 0;
+
     /**
      * content line by default show, over it will collapse. we can expand/collapse it
      */
     private static final int MAX_LINE_COUNT      = 6;
-    private static final int STATE_UNKNOWN       = -1;
-    private static final int STATE_NOT_OVERFLOW  = 1;
-    private static final int STATE_COLLAPSED     = 2;
-    private static final int STATE_EXPANDED      = 3;
-
-    // max images line for each tweet
-    private static final int IMAGES_MAX_COLUMN = 3;
 
     // load 5 tweets each time
     public static final int LOAD_TWEETS_NUM_EACH_TIME = 5;
 
-    public TweetListAdapter(Activity context, ImageLoader imageLoader) {
+    public TweetListAdapter(Activity context, ImageLoader imageLoader, PagedTweetSource tweetSource) {
         mContext = context;
         mImageLoader = imageLoader;
-        mTextStateList = new SparseArray();
+        mTweetSource = tweetSource;
+        // rows keep their views when tweets are inserted, removed or moved by refresh
+        setHasStableIds(true);
+        mContentLayoutCache = createContentLayoutCache(context.getResources());
+        mCommentTextCache = new CommentTextCache(COLLAPSED_COMMENT_COUNT, Color.BLUE);
+    }
+
+    /**
+     * paint and width of content are the same as tweet_item, width is corrected when content is measured
+     * @param res
+     * @return
+     */
+    private static ContentLayoutCache createContentLayoutCache(Resources res) {
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.density = res.getDisplayMetrics().density;
+        paint.setTextSize(res.getDimension(R.dimen.text_size));
+        paint.setColor(Color.BLACK);
+
+        final int width = res.getDisplayMetrics().widthPixels
+                - 2 * res.getDimensionPixelSize(R.dimen.tweet_list_horizontal_padding)
+                - res.getDimensionPixelSize(R.dimen.sender_avatar_size)
+                - res.getDimensionPixelSize(R.dimen.avatar_marginright);
+        return new ContentLayoutCache(paint, MAX_LINE_COUNT, width);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (0 == position && hasHeader()) return HEADER_ID;
+        final int dataPosition = (hasHeader() ? position-1 : position);
+        // tweet of dropped page is unknown until it's loaded again, its position stands for it,
+        // in the range which no tweet, header or NO_ID takes
+        TweetBean tweet = mTweetSource.peek(dataPosition);
+        return null == tweet ? Long.MIN_VALUE + dataPosition : tweet.getId();
     }
 
     @Override
@@ -110,6 +133,30 @@ public class TweetListAdapter extends RecyclerView.Adapter<TweetListAdapter.Base
         }
     }
 
+    @Override
+    public void onViewRecycled(BaseViewHolder holder) {
+        super.onViewRecycled(holder);
+
+        // the row is recycled, its images are useless now, stop loading them and release their bitmaps
+        clearImage(holder.getImageView(R.id.avatar));
+        clearImage(holder.getImageView(R.id.profile));
+        View images = holder.getView(R.id.images_layout);
+        if (images instanceof ViewGroup) {
+            ViewGroup imagesLayout = (ViewGroup) images;
+            for (int i = 0; i < imagesLayout.getChildCount(); ++i) {
+                if (imagesLayout.getChildAt(i) instanceof ImageView) {
+                    clearImage((ImageView) imagesLayout.getChildAt(i));
+                }
+            }
+        }
+    }
+
+    private void clearImage(ImageView imageView) {
+        if (null != imageView) {
+            mImageLoader.clearBitmap(imageView);
+        }
+    }
+
     /**
      * bind user head
      * @param holder
@@ -119,17 +166,10 @@ public class TweetListAdapter extends RecyclerView.Adapter<TweetListAdapter.Base
         ImageView avatar = holder.getImageView(R.id.avatar);
         TextView nick = holder.getTextView(R.id.nick);
 
-        int screenWidth = ((WindowManager)mContext.getSystemService(Context.WINDOW_SERVICE))
-                .getDefaultDisplay().getWidth();
-        Resources res = mContext.getResources();
-
         //set profile and avatar
-        mImageLoader.bindBitmap(profile, mUser.getProfileimage(), screenWidth,
-                res.getDimensionPixelOffset(R.dimen.profile_height));
+        mImageLoader.bindBitmap(profile, mUser.getProfileimage(), mImageLoader.getmProfileImageProfile());
 
-        mImageLoader.bindBitmap(avatar, mUser.getAvatar(),
-                res.getDimensionPixelOffset(R.dimen.user_avatar_size),
-                res.getDimensionPixelOffset(R.dimen.user_avatar_size));
+        mImageLoader.bindBitmap(avatar, mUser.getAvatar(), mImageLoader.getmUserAvatarProfile());
 
         nick.setText(mUser.getNick());
     }
@@ -142,269 +182,238 @@ public class TweetListAdapter extends RecyclerView.Adapter<TweetListAdapter.Base
     private void bindTweet(final BaseViewHolder holder, final int position) {
         // get Tweet object
         final int dataPosition = (hasHeader() ? position-1 : position);
-        TweetBean tweet = mTweetList.get(dataPosition);
-        if (null == tweet || !tweet.isValid()) return;
+        TweetBean tweet = mTweetSource.get(dataPosition);
 
         final ImageView avatar = holder.getImageView(R.id.avatar);
         final TextView nick = holder.getTextView(R.id.nick);
-        final TextView content = holder.getTextView(R.id.content);
+        final ContentTextView content = (ContentTextView)holder.getView(R.id.content);
         final TextView expandOrCollapse = holder.getTextView(R.id.content_expand_or_collapse);
-        final GridLayout images = (GridLayout)holder.getView(R.id.images_layout);
-        final LinearLayout comments = (LinearLayout)holder.getView(R.id.comments_layout);
+        final NineGridView images = (NineGridView)holder.getView(R.id.images_layout);
+        final TextView comments = holder.getTextView(R.id.comments);
+        final TextView commentsMore = holder.getTextView(R.id.comments_more);
+
+        // its page has been dropped and is being loaded again, show an empty row until then
+        if (null == tweet || !tweet.isValid()) {
+            mImageLoader.clearBitmap(avatar);
+            nick.setText("");
+            content.setTag(R.id.content_tweet, null);
+            content.setLayout(null, 0);
+            content.setContentDescription(null);
+            expandOrCollapse.setVisibility(View.GONE);
+            clearImages(images, 0);
+            images.setImageCount(0);
+            comments.setTag(R.id.comments_tweet, null);
+            comments.setText("");
+            comments.setVisibility(View.GONE);
+            commentsMore.setVisibility(View.GONE);
+            return;
+        }
 
-        Resources res = mContext.getResources();
-        mImageLoader.bindBitmap(avatar, tweet.getSender().getAvatar(),
-                res.getDimensionPixelOffset(R.dimen.sender_avatar_size),
-                res.getDimensionPixelOffset(R.dimen.sender_avatar_size));
+        mImageLoader.bindBitmap(avatar, tweet.getSender().getAvatar(), mImageLoader.getmSenderAvatarProfile());
 
         nick.setText(tweet.getSender().getNick());
-        bindContent(dataPosition, tweet.getContent(), content, expandOrCollapse);
+        bindContent(content, expandOrCollapse, tweet);
         bindImages(images, tweet.getImages());
-        bindComments(comments, tweet.getComments());
+        bindComments(comments, commentsMore, tweet);
     }
 
     /**
-     * bind comments to adapter
+     * bind comments to adapter, their text is built by CommentTextCache, the first ones are shown until "show all"
      * @param commentsView
-     * @param comments
+     * @param moreView
+     * @param tweet
      */
-    private void bindComments(LinearLayout commentsView, List<TweetBean.CommentBean> comments) {
-        //remove old all
-        commentsView.removeAllViews();
-        if (null == comments || comments.isEmpty()) return;
-
-        for (TweetBean.CommentBean comment : comments) {
-            TextView tv = new TextView(mContext);
-            float size = mContext.getResources().getDimension(R.dimen.text_size);
-            tv.setTextSize(TypedValue.COMPLEX_UNIT_PX, size);
-
-            // discard comment has no content or sender nick
-            if (TextUtils.isEmpty(comment.getSender().getNick()) || TextUtils.isEmpty(comment.getContent())) {
-                continue;
-            }
-            String text = comment.getSender().getNick() + ":" + comment.getContent();
-
-            // set different color for comment sender's nick
-            SpannableStringBuilder builder = new SpannableStringBuilder(text);
-            ForegroundColorSpan blueSpan = new ForegroundColorSpan(Color.BLUE);
-            ForegroundColorSpan blackSpan = new ForegroundColorSpan(Color.BLACK);
-            builder.setSpan(blueSpan, 0, comment.getSender().getNick().length()+1, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            builder.setSpan(blackSpan, comment.getSender().getNick().length()+1, text.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            tv.setText(builder);
-
-            LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT,
-                    LinearLayout.LayoutParams.WRAP_CONTENT);
-            tv.setLayoutParams(params);
-            commentsView.addView(tv);
+    private void bindComments(TextView commentsView, TextView moreView, TweetBean tweet) {
+        commentsView.setTag(R.id.comments_tweet, tweet);
+        moreView.setTag(R.id.comments_tweet, tweet);
+
+        final CommentTextCache.CommentText text = mCommentTextCache.get(tweet);
+        if (0 == text.count) {
+            commentsView.setText("");
+            commentsView.setVisibility(View.GONE);
+            moreView.setVisibility(View.GONE);
+            return;
+        }
+
+        commentsView.setVisibility(View.VISIBLE);
+        if (!text.hasMore()) {
+            commentsView.setText(text.collapsed);
+            moreView.setVisibility(View.GONE);
+            return;
+        }
+
+        moreView.setVisibility(View.VISIBLE);
+        moreView.setOnClickListener(mCommentsMoreListener);
+        if (mExpandedComments.contains(tweet.getId())) {
+            showFullComments(commentsView, moreView, tweet, text);
+        } else {
+            commentsView.setText(text.collapsed);
+            moreView.setText(mContext.getString(R.string.show_all_comments, text.count));
         }
     }
 
     /**
-     * bind images to adapter
-     * @param imagesLayout
-     * @param images
+     * show all comments, its text is set when it's built if it's not built yet
      */
-    private void bindImages(GridLayout imagesLayout, List<TweetBean.ImagesBean> images) {
-        //remove old all
-        imagesLayout.removeAllViews();
-        if (null == images || images.isEmpty()) return;
-
-        // a single image need to be add, now the image is not Square Image View
-        if (images.size() == 1) {
-            addSingleImage(imagesLayout, images.get(0));
+    private void showFullComments(final TextView commentsView, final TextView moreView, final TweetBean tweet,
+                                  CommentTextCache.CommentText text) {
+        moreView.setText(R.string.hide_comments);
+        if (null != text.getFull()) {
+            commentsView.setText(text.getFull());
             return;
         }
-
-        // when there are multi iamges, it's Square Image View
-        addMultiImages(imagesLayout, images);
+        commentsView.setText(text.collapsed);
+        mCommentTextCache.getFull(tweet, new CommentTextCache.Callback() {
+            @Override
+            public void onFullText(TweetBean builtTweet, CommentTextCache.CommentText builtText) {
+                // the row is showing the same tweet expanded
+                if (tweet == commentsView.getTag(R.id.comments_tweet) && mExpandedComments.contains(tweet.getId())) {
+                    commentsView.setText(builtText.getFull());
+                }
+            }
+        });
     }
 
     /**
-     * add multi images to tweet, it't not more than 9.
-     * When there are 4 images, we should fill 3'rd column with invisiable view
-     * @param imagesLayout
-     * @param images
+     * expand or collapse comments, one listener is shared by all rows, the tweet is in tag of view
      */
-    private void addMultiImages(GridLayout imagesLayout, List<TweetBean.ImagesBean> images) {
-        int columnCount = IMAGES_MAX_COLUMN;
-        imagesLayout.setColumnCount(columnCount);
-
-        //add all images to GridLayout
-        for (int i = 0, size = images.size(); i < size; i++) {
-            // fill invisiable ImageView in 3'rd column, when the images size equals to 4
-            int specLocation = fillInvisiableView(imagesLayout, i, size);
-
-            // create a SquareImageView instance
-            ImageView imageView = new SquareImageView(mContext);
-            imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
-
-            //set width to 0, using weight value
-            GridLayout.LayoutParams layoutParams = new GridLayout.LayoutParams(new ViewGroup.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT));
-            GridLayout.Spec rowSpec = GridLayout.spec(specLocation / columnCount);
-            GridLayout.Spec columnSpec = GridLayout.spec(specLocation % columnCount, 1.0f);
-            layoutParams.rowSpec = rowSpec;
-            layoutParams.columnSpec = columnSpec;
-            int margins = mContext.getResources().getDimensionPixelOffset(R.dimen.image_margins);
-            layoutParams.setMargins(margins, margins, margins, margins);
-            imagesLayout.addView(imageView, layoutParams);
-
-            int screenWidth = ((WindowManager)mContext.getSystemService(Context.WINDOW_SERVICE))
-                    .getDefaultDisplay().getWidth();
-            mImageLoader.bindBitmap(imageView, images.get(i).getUrl(),
-                    screenWidth/3 ,screenWidth/3);
+    private final View.OnClickListener mCommentsMoreListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            Object tag = v.getTag(R.id.comments_tweet);
+            TextView commentsView = ((View) v.getParent()).findViewById(R.id.comments);
+            if (!(tag instanceof TweetBean) || null == commentsView) return;
+
+            TweetBean tweet = (TweetBean) tag;
+            if (!mExpandedComments.remove(tweet.getId())) {
+                mExpandedComments.add(tweet.getId());
+            }
+            bindComments(commentsView, (TextView) v, tweet);
         }
-    }
+    };
 
     /**
-     * define the constants for specially handle when 4 images in total
+     * build contents' layouts and comments' texts of tweets in sub-thread before they are shown
+     * @param tweets
+     * @param from
+     * @param to
      */
-    private static final int IMAGE_COUNT_FOUR = 4;
-    private static final int IMAGE_INVISIABLE_VIEW_INDEX = 2;
+    public void prefetchTexts(List<TweetBean> tweets, int from, int to) {
+        mContentLayoutCache.prefetch(tweets, from, to);
+        mCommentTextCache.prefetch(tweets, from, to);
+    }
+
     /**
-     * fill invisiable ImageView in 3'rd column, when the images size equals to 4
+     * bind images to adapter, image views of grid are reused
      * @param imagesLayout
-     * @param i
-     * @param size
-     * @return
+     * @param images
      */
-    private int fillInvisiableView(GridLayout imagesLayout, int i, int size) {
-        int specLocation = i;
-        if (IMAGE_COUNT_FOUR == size) {
-
-            // add a invisible imageView to get 1/3 weight for each one
-            if (IMAGE_INVISIABLE_VIEW_INDEX == i) {
-                ImageView placeHolder = new SquareImageView(mContext);
-                placeHolder.setVisibility(View.INVISIBLE);
-
-                GridLayout.LayoutParams placeHolderParams = new GridLayout.LayoutParams(new ViewGroup.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT));
-                GridLayout.Spec rowSpec = GridLayout.spec(0);
-                GridLayout.Spec columnSpec = GridLayout.spec(2, 1.0f);
-                placeHolderParams.rowSpec = rowSpec;
-                placeHolderParams.columnSpec = columnSpec;
-                imagesLayout.addView(placeHolder, placeHolderParams);
-            }
-
-            // add one for Spec row and column
-            if (i > 1) {
-                specLocation = i + 1;
+    private void bindImages(NineGridView imagesLayout, List<TweetBean.ImagesBean> images) {
+        final int count = null == images ? 0 : Math.min(images.size(), NineGridView.MAX_IMAGE_COUNT);
+        clearImages(imagesLayout, count);
+        imagesLayout.setImageCount(count);
+
+        // a single image keeps its aspect ratio, multi images are square
+        final DecodeProfile profile = 1 == count
+                ? mImageLoader.getmSingleImageProfile() : mImageLoader.getmGridImageProfile();
+        for (int i = 0; i < count; i++) {
+            TweetBean.ImagesBean image = images.get(i);
+            ImageView imageView = imagesLayout.getImageView(i);
+            if (null == image || TextUtils.isEmpty(image.getUrl())) {
+                mImageLoader.clearBitmap(imageView);
+                continue;
             }
+            mImageLoader.bindBitmap(imageView, image.getUrl(), profile);
         }
-        return specLocation;
     }
 
     /**
-     * add a single image to tweet, it's not Square Image View
+     * cancel requests of image views which will be hidden, so bitmaps of former tweet never show up in them
      * @param imagesLayout
-     * @param imagesBean
+     * @param from index of the first image view to be hidden
      */
-    private void addSingleImage(GridLayout imagesLayout, TweetBean.ImagesBean imagesBean) {
-        ImageView imageView = new ImageView(mContext);
-        imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
-        imageView.setAdjustViewBounds(true);
-        Resources res = mContext.getResources();
-        imageView.setMaxHeight(res.getDimensionPixelOffset(R.dimen.max_height_single_image));
-        imageView.setMaxWidth(res.getDimensionPixelOffset(R.dimen.max_width_single_image));
-        mImageLoader.bindBitmap(imageView, imagesBean.getUrl(),
-                res.getDimensionPixelOffset(R.dimen.max_width_single_image),
-                res.getDimensionPixelOffset(R.dimen.max_height_single_image));
-
-        GridLayout.Spec rowSpec = GridLayout.spec(0);
-        GridLayout.Spec columnSpec = GridLayout.spec(0);
-        GridLayout.LayoutParams layoutParams = new GridLayout.LayoutParams
-                (new ViewGroup.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
-        layoutParams.rowSpec = rowSpec;
-        layoutParams.columnSpec = columnSpec;
-
-        imagesLayout.addView(imageView, layoutParams);
+    private void clearImages(NineGridView imagesLayout, int from) {
+        for (int i = from, count = imagesLayout.getImageCount(); i < count; i++) {
+            ImageView imageView = imagesLayout.getImageView(i);
+            mImageLoader.clearBitmap(imageView);
+        }
     }
 
     /**
-     * bind content to adapter
-     * @param dataPosition
-     * @param contentString
+     * bind content to adapter, its layout is built by ContentLayoutCache, collapsed if it has too many lines
      * @param content
      * @param expandOrCollapse
+     * @param tweet
      */
-    private void bindContent(final int dataPosition, String contentString, final TextView content, final TextView expandOrCollapse) {
-        if (TextUtils.isEmpty(contentString)) {
-            content.setText("");
-            expandOrCollapse.setText("");
+    private void bindContent(ContentTextView content, TextView expandOrCollapse, TweetBean tweet) {
+        content.setTag(R.id.content_tweet, tweet);
+        expandOrCollapse.setTag(R.id.content_tweet, tweet);
+        content.setOnTextWidthChangedListener(mContentWidthListener);
+        content.setContentDescription(tweet.getContent());
+
+        if (TextUtils.isEmpty(tweet.getContent())) {
+            content.setLayout(null, 0);
+            expandOrCollapse.setVisibility(View.GONE);
             return;
         }
 
-        int state = mTextStateList.get(dataPosition, STATE_UNKNOWN);
-
-        // when first load, init it
-        if (state == STATE_UNKNOWN){
-            content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
-                @Override
-                public boolean onPreDraw() {
-                    // after this callback is called, we should remove the listener
-                    content.getViewTreeObserver().removeOnPreDrawListener(this);
-
-                    content.setMaxLines(MAX_LINE_COUNT);
-
-                    // if content's line over MAX_LINE_COUNT, we should collapse it by default
-                    if (content.getLineCount() > MAX_LINE_COUNT) {
-                        expandOrCollapse.setVisibility(View.VISIBLE);
-                        expandOrCollapse.setText(mContext.getResources().getText(R.string.full_content));
-                        mTextStateList.put(dataPosition, STATE_COLLAPSED);  // save its expand/collapse state
-                    } else {
-                        // content's line is not over MAX_LINE_COUNT
-                        expandOrCollapse.setVisibility(View.GONE);
-                        mTextStateList.put(dataPosition,STATE_NOT_OVERFLOW);
-                    }
-                    return true;
-                }
-            });
-            content.setMaxLines(Integer.MAX_VALUE);
-        } else {
-            // Current content's expand/collapse state has been inited
-            switch (state){
-                case STATE_NOT_OVERFLOW:
-                    expandOrCollapse.setVisibility(View.GONE);
-                    break;
-                case STATE_COLLAPSED:
-                    content.setMaxLines(MAX_LINE_COUNT);
-                    expandOrCollapse.setVisibility(View.VISIBLE);
-                    expandOrCollapse.setText(mContext.getResources().getText(R.string.full_content));
-                    break;
-                case STATE_EXPANDED:
-                    content.setMaxLines(Integer.MAX_VALUE);
-                    expandOrCollapse.setVisibility(View.VISIBLE);
-                    expandOrCollapse.setText(mContext.getResources().getText(R.string.fold_content));
-                    break;
-            }
+        final ContentLayoutCache.ContentLayout layout = mContentLayoutCache.get(tweet);
+        if (!layout.overflow) {
+            content.setLayout(layout.full, Integer.MAX_VALUE);
+            expandOrCollapse.setVisibility(View.GONE);
+            return;
         }
 
-        // set content
-        content.setText(contentString);
+        expandOrCollapse.setVisibility(View.VISIBLE);
+        expandOrCollapse.setOnClickListener(mContentExpandListener);
+        if (mExpandedContents.contains(tweet.getId())) {
+            content.setLayout(layout.full, Integer.MAX_VALUE);
+            expandOrCollapse.setText(R.string.fold_content);
+        } else {
+            content.setLayout(layout.collapsed, MAX_LINE_COUNT);
+            expandOrCollapse.setText(R.string.full_content);
+        }
+    }
 
-        //set expand and collapse click listener
-        expandOrCollapse.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                int state = mTextStateList.get(dataPosition, STATE_UNKNOWN);
-                if (state == STATE_COLLAPSED){
-                    content.setMaxLines(Integer.MAX_VALUE);
-                    expandOrCollapse.setText(mContext.getResources().getText(R.string.fold_content));
-                    mTextStateList.put(dataPosition, STATE_EXPANDED);
-                }else if (state == STATE_EXPANDED){
-                    content.setMaxLines(MAX_LINE_COUNT);
-                    expandOrCollapse.setText(mContext.getResources().getText(R.string.full_content));
-                    mTextStateList.put(dataPosition, STATE_COLLAPSED);
-                }
+    /**
+     * expand or collapse content, one listener is shared by all rows, the tweet is in tag of view
+     */
+    private final View.OnClickListener mContentExpandListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            Object tag = v.getTag(R.id.content_tweet);
+            View content = ((View) v.getParent()).findViewById(R.id.content);
+            if (!(tag instanceof TweetBean) || !(content instanceof ContentTextView)) return;
+
+            TweetBean tweet = (TweetBean) tag;
+            if (!mExpandedContents.remove(tweet.getId())) {
+                mExpandedContents.add(tweet.getId());
             }
-        });
-    }
+            bindContent((ContentTextView) content, (TextView) v, tweet);
+        }
+    };
+
+    /**
+     * content is not as wide as layouts, e.g. the first time it's measured or after rotation,
+     * layouts are built again for its width
+     */
+    private final ContentTextView.OnTextWidthChangedListener mContentWidthListener =
+            new ContentTextView.OnTextWidthChangedListener() {
+        @Override
+        public void onTextWidthChanged(ContentTextView view, int width) {
+            Object tag = view.getTag(R.id.content_tweet);
+            View expandOrCollapse = ((View) view.getParent()).findViewById(R.id.content_expand_or_collapse);
+            if (!(tag instanceof TweetBean) || !(expandOrCollapse instanceof TextView)) return;
+
+            mContentLayoutCache.setWidth(width);
+            bindContent(view, (TextView) expandOrCollapse, (TweetBean) tag);
+        }
+    };
 
     @Override
     public int getItemCount() {
         // here should consider header
-        if (null == mTweetList || mTweetList.size() == 0) {
-            return hasHeader() ? 1 : 0;
-        }
-        return mTweetList.size() + (hasHeader() ? 1 : 0);
+        return mTweetSource.size() + (hasHeader() ? 1 : 0);
     }
 
     /**
@@ -1,7 +1,5 @@
 package com.example.friendcircle.bean;
 
-import android.text.TextUtils;
-
 import java.util.List;
 
 /**
@@ -20,6 +18,11 @@ public class TweetBean {
     private java.util.List<ImagesBean> images;
     private java.util.List<CommentBean> comments;
 
+    // hash of what doesn't change once the tweet is posted. 0 until it's computed
+    private transient volatile long hash;
+    // index among tweets of the feed with the same hash, so identical posts get different ids
+    private transient volatile int occurrence;
+
     public String getContent() {
         return content;
     }
@@ -52,9 +55,83 @@ public class TweetBean {
         this.comments = comments;
     }
 
+    /**
+     * ids of tweets are never lower than it, lists can use the lower ones for rows without a tweet,
+     * e.g. Long.MIN_VALUE + position
+     */
+    public static final long MIN_ID = Long.MIN_VALUE + (1L << 32);
+
+    /**
+     * Tweets have no id from server, so the id is made of the hash, see {@link #getHash()},
+     * and the occurrence of the hash in its feed, see {@link #setOccurrence(int)}.
+     * @return stable id of tweet, never 0 or -1 which lists use for header and no id, and never lower than MIN_ID
+     */
+    public long getId() {
+        long id = getHash();
+        final int occurrence = this.occurrence;
+        if (0 != occurrence) {
+            id ^= occurrence;
+            id *= 0x100000001b3L;
+        }
+        if (id < MIN_ID) {
+            id += 1L << 62;
+        } else if (0 == id || -1 == id) {
+            id += 2;
+        }
+        return id;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of sender's username, content and images, which don't change once the tweet is posted.
+     * Identical posts have the same hash.
+     * @return never 0
+     */
+    public long getHash() {
+        long hash = this.hash;
+        if (0 != hash) return hash;
+
+        hash = 0xcbf29ce484222325L;
+        hash = hash(hash, null != sender ? sender.getUsername() : null);
+        hash = hash(hash, content);
+        if (null != images) {
+            for (ImagesBean image : images) {
+                hash = hash(hash, null != image ? image.getUrl() : null);
+            }
+        }
+        if (0 == hash) hash = 1;
+        this.hash = hash;
+        return hash;
+    }
+
+    public int getOccurrence() {
+        return occurrence;
+    }
+
+    /**
+     * It's set while the feed is parsed, the n-th tweet with the same hash gets n, so it's the same
+     * whenever the feed is parsed.
+     * @param occurrence
+     */
+    public void setOccurrence(int occurrence) {
+        this.occurrence = occurrence;
+    }
+
+    private static long hash(long hash, String s) {
+        if (null != s) {
+            for (int i = 0, length = s.length(); i < length; ++i) {
+                hash ^= s.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        // separator, so "ab"+"c" differs from "a"+"bc"
+        hash ^= 0xffff;
+        hash *= 0x100000001b3L;
+        return hash;
+    }
+
     public boolean isValid() {
        if (null == sender
-               || (TextUtils.isEmpty(content) && (null == images || images.size() == 0))) {
+               || ((null == content || content.isEmpty()) && (null == images || images.size() == 0))) {
            return false;
        }
        return true;
@@ -79,40 +156,37 @@ public class TweetBean {
         return sb.toString();
     }
 
+    /**
+     * Immutable, one sender is shared by all tweets and comments of the same user, see ModelInterner
+     */
     public static class SenderBean {
         /**
          * username : jport
          * nick : Joe Portman
          * avatar : https://encrypted-tbn3.gstatic.com/images?q=tbn:ANd9GcRJm8UXZ0mYtjv1a48RKkFkdyd4kOWLJB0o_l7GuTS8-q8VF64w
          */
-        private String username;
-        private String nick;
-        private String avatar;
+        private final String username;
+        private final String nick;
+        private final String avatar;
 
-        public String getUsername() {
-            return username;
+        public SenderBean(String username, String nick, String avatar) {
+            this.username = username;
+            this.nick = nick;
+            this.avatar = avatar;
         }
 
-        public void setUsername(String username) {
-            this.username = username;
+        public String getUsername() {
+            return username;
         }
 
         public String getNick() {
             return nick;
         }
 
-        public void setNick(String nick) {
-            this.nick = nick;
-        }
-
         public String getAvatar() {
             return avatar;
         }
 
-        public void setAvatar(String avatar) {
-            this.avatar = avatar;
-        }
-
         @Override
         public String toString() {
             return "SenderBean{" +
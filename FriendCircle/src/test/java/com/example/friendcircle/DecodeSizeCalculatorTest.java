@@ -0,0 +1,174 @@
+package com.example.friendcircle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Output sizes of {@link DecodeSizeCalculator} across aspect ratios of images and requests.
+ */
+public class DecodeSizeCalculatorTest {
+    private static final int[][] SOURCE_SIZES = {
+            {4000, 3000}, {3000, 4000}, {1080, 1080}, {1920, 1080}, {1080, 1920},
+            {5000, 500}, {500, 5000}, {641, 479}, {333, 777}, {101, 99}
+    };
+    private static final int[][] REQUEST_SIZES = {
+            {100, 100}, {120, 80}, {80, 120}, {360, 240}, {1080, 540}, {1, 1}, {99, 1}
+    };
+
+    /**
+     * decode with the calculated sample size and densities
+     * @param roundUp whether the decoder rounds sampled size up, as JPEG does, or down
+     */
+    private static int[] decode(int srcWidth, int srcHeight, DecodeSizeCalculator size, boolean roundUp) {
+        int sampleSize = size.getSampleSize();
+        int width = roundUp ? (srcWidth + sampleSize - 1) / sampleSize : srcWidth / sampleSize;
+        int height = roundUp ? (srcHeight + sampleSize - 1) / sampleSize : srcHeight / sampleSize;
+        return new int[] {
+                DecodeSizeCalculator.getScaledSize(width, size.getDensity(), size.getTargetDensity()),
+                DecodeSizeCalculator.getScaledSize(height, size.getDensity(), size.getTargetDensity())
+        };
+    }
+
+    @Test
+    public void decodedSize_fillsRequest() throws Exception {
+        for (int[] src : SOURCE_SIZES) {
+            for (int[] req : REQUEST_SIZES) {
+                DecodeSizeCalculator size = DecodeSizeCalculator.calculate(src[0], src[1], req[0], req[1]);
+                String message = src[0] + "x" + src[1] + " -> " + req[0] + "x" + req[1];
+
+                // image is not scaled up when it's smaller than request size in one axis
+                if (src[0] <= req[0] || src[1] <= req[1]) {
+                    assertEquals(message, src[0], size.getTargetWidth());
+                    assertEquals(message, src[1], size.getTargetHeight());
+                    assertFalse(message, size.needsScaling());
+                    continue;
+                }
+
+                // it covers request size and one axis meets it exactly
+                assertTrue(message, size.getTargetWidth() >= req[0]);
+                assertTrue(message, size.getTargetHeight() >= req[1]);
+                assertTrue(message, size.getTargetWidth() == req[0] || size.getTargetHeight() == req[1]);
+
+                // aspect ratio is kept, the other axis is rounded from the exact one
+                float height = (float) src[1] * size.getTargetWidth() / src[0];
+                float width = (float) src[0] * size.getTargetHeight() / src[1];
+                assertTrue(message, Math.abs(height - size.getTargetHeight()) <= 1
+                        || Math.abs(width - size.getTargetWidth()) <= 1);
+
+                // decoded size is the target size, sampling may lose or keep a partial pixel
+                for (boolean roundUp : new boolean[] {false, true}) {
+                    int[] decoded = decode(src[0], src[1], size, roundUp);
+                    assertEquals(message, size.getTargetWidth(), decoded[0], 1);
+                    assertEquals(message, size.getTargetHeight(), decoded[1], 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void decodedSize_fitsInsideRequest() throws Exception {
+        for (int[] src : SOURCE_SIZES) {
+            for (int[] req : REQUEST_SIZES) {
+                DecodeSizeCalculator size = DecodeSizeCalculator.calculateFit(src[0], src[1], req[0], req[1]);
+                String message = src[0] + "x" + src[1] + " within " + req[0] + "x" + req[1];
+
+                // image already inside request size is not scaled up
+                if (src[0] <= req[0] && src[1] <= req[1]) {
+                    assertEquals(message, src[0], size.getTargetWidth());
+                    assertEquals(message, src[1], size.getTargetHeight());
+                    assertFalse(message, size.needsScaling());
+                    continue;
+                }
+
+                // it's inside request size and one axis meets it exactly, the other one may round up a pixel
+                assertTrue(message, size.getTargetWidth() <= req[0] + 1);
+                assertTrue(message, size.getTargetHeight() <= req[1] + 1);
+                assertTrue(message, size.getTargetWidth() == req[0] || size.getTargetHeight() == req[1]);
+
+                for (boolean roundUp : new boolean[] {false, true}) {
+                    int[] decoded = decode(src[0], src[1], size, roundUp);
+                    assertEquals(message, size.getTargetWidth(), decoded[0], 1);
+                    assertEquals(message, size.getTargetHeight(), decoded[1], 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tallImage_fitsInsideMaxSize() throws Exception {
+        // 1:10 image shown within 400x600, filling would decode it to 400x4000
+        DecodeSizeCalculator fill = DecodeSizeCalculator.calculate(500, 5000, 400, 600);
+        DecodeSizeCalculator fit = DecodeSizeCalculator.calculateFit(500, 5000, 400, 600);
+        assertEquals(4000, fill.getTargetHeight());
+        assertEquals(60, fit.getTargetWidth());
+        assertEquals(600, fit.getTargetHeight());
+        assertEquals(8, fit.getSampleSize());
+    }
+
+    @Test
+    public void sampleSize_isLargestPowerOfTwoNotUndershooting() throws Exception {
+        for (int[] src : SOURCE_SIZES) {
+            for (int[] req : REQUEST_SIZES) {
+                DecodeSizeCalculator size = DecodeSizeCalculator.calculate(src[0], src[1], req[0], req[1]);
+                int sampleSize = size.getSampleSize();
+                String message = src[0] + "x" + src[1] + " -> " + req[0] + "x" + req[1];
+
+                assertEquals(message, 0, sampleSize & (sampleSize - 1));
+                assertTrue(message, DecodeSizeCalculator.getSampledSize(src[0], sampleSize) >= size.getTargetWidth());
+                assertTrue(message, DecodeSizeCalculator.getSampledSize(src[1], sampleSize) >= size.getTargetHeight());
+                assertFalse(message, sampleSize * 2 <= Math.min(src[0], src[1])
+                        && DecodeSizeCalculator.getSampledSize(src[0], sampleSize * 2) >= size.getTargetWidth()
+                        && DecodeSizeCalculator.getSampledSize(src[1], sampleSize * 2) >= size.getTargetHeight());
+            }
+        }
+    }
+
+    @Test
+    public void sampleSize_ofLandscapePhotoForAvatar() throws Exception {
+        // the old calculation sampled it by 30 (rounded down to 16) from the smaller dimension only
+        DecodeSizeCalculator size = DecodeSizeCalculator.calculate(4000, 3000, 100, 100);
+        assertEquals(16, size.getSampleSize());
+        assertEquals(133, size.getTargetWidth());
+        assertEquals(100, size.getTargetHeight());
+    }
+
+    @Test
+    public void zeroRequestSize_isConstrainedByOtherAxis() throws Exception {
+        DecodeSizeCalculator size = DecodeSizeCalculator.calculate(4000, 3000, 400, 0);
+        assertEquals(400, size.getTargetWidth());
+        assertEquals(300, size.getTargetHeight());
+        assertEquals(8, size.getSampleSize());
+        assertArrayEquals(new int[] {400, 300}, decode(4000, 3000, size, false));
+
+        size = DecodeSizeCalculator.calculate(4000, 3000, 0, 300);
+        assertEquals(400, size.getTargetWidth());
+        assertEquals(300, size.getTargetHeight());
+        assertArrayEquals(new int[] {400, 300}, decode(4000, 3000, size, false));
+    }
+
+    @Test
+    public void noRequestSize_decodesSourceSize() throws Exception {
+        DecodeSizeCalculator size = DecodeSizeCalculator.calculate(4000, 3000, 0, 0);
+        assertEquals(1, size.getSampleSize());
+        assertFalse(size.needsScaling());
+        assertEquals(4000, size.getTargetWidth());
+        assertEquals(3000, size.getTargetHeight());
+    }
+
+    @Test
+    public void smallImage_isNeverScaledUp() throws Exception {
+        DecodeSizeCalculator size = DecodeSizeCalculator.calculate(80, 60, 100, 100);
+        assertEquals(1, size.getSampleSize());
+        assertFalse(size.needsScaling());
+        assertEquals(80, size.getTargetWidth());
+        assertEquals(60, size.getTargetHeight());
+    }
+
+    @Test
+    public void exactSampling_needsNoScaling() throws Exception {
+        DecodeSizeCalculator size = DecodeSizeCalculator.calculate(1600, 1200, 400, 300);
+        assertEquals(4, size.getSampleSize());
+        assertFalse(size.needsScaling());
+    }
+}
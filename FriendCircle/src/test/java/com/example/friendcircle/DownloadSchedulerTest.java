@@ -0,0 +1,312 @@
+package com.example.friendcircle;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DownloadScheduler} against a stand-in image server which injects latency and errors:
+ * "/slow" answers after a while, "/flaky" fails twice before it answers, "/timeout" times out once,
+ * "/broken" always fails, "/missing" is 404, "/tail" answers the first request after a long time.
+ */
+public class DownloadSchedulerTest {
+    private static final long SLOW_MS = 150;
+    private static final long TAIL_MS = 3000;
+    private static final long READ_TIMEOUT_MS = 300;
+
+    private MockWebServer mServer;
+    private final OkHttpClient mClient = new OkHttpClient();
+    private ExecutorService mExecutor;
+    private DownloadScheduler mScheduler;
+
+    // requests of each path, requests running on each host now, and the most of them at the same time
+    private final Map<String, Integer> mRequestCounts = new HashMap<>();
+    private final Map<String, Integer> mRunning = new HashMap<>();
+    private final Map<String, Integer> mMaxRunning = new HashMap<>();
+
+    /**
+     * result of a download
+     */
+    private static class Result implements DownloadScheduler.Callback {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile int code;
+        volatile String body;
+        volatile IOException failure;
+        volatile long finishedAt;
+        volatile boolean cancelled;
+
+        @Override
+        public void onResponse(Response response) throws IOException {
+            code = response.code();
+            body = response.body().string();
+            finishedAt = System.nanoTime();
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(IOException e) {
+            failure = e;
+            latch.countDown();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("download never finished", latch.await(20, TimeUnit.SECONDS));
+        }
+    }
+
+    private synchronized int onRequest(String path, String host) {
+        Integer count = mRequestCounts.get(path);
+        count = null == count ? 1 : count + 1;
+        mRequestCounts.put(path, count);
+
+        Integer running = mRunning.get(host);
+        running = null == running ? 1 : running + 1;
+        mRunning.put(host, running);
+        Integer max = mMaxRunning.get(host);
+        if (null == max || running > max) {
+            mMaxRunning.put(host, running);
+        }
+        return count;
+    }
+
+    private synchronized void onResponded(String host) {
+        mRunning.put(host, mRunning.get(host) - 1);
+    }
+
+    private synchronized int getRequestCount(String path) {
+        Integer count = mRequestCounts.get(path);
+        return null == count ? 0 : count;
+    }
+
+    private synchronized int getMaxRunning(String host) {
+        Integer max = mMaxRunning.get(host);
+        return null == max ? 0 : max;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                final String path = request.getPath();
+                final String host = request.getHeader("Host");
+                final int count = onRequest(path, host);
+                try {
+                    if (path.startsWith("/slow")) {
+                        Thread.sleep(SLOW_MS);
+                    } else if (path.startsWith("/flaky") && count <= 2) {
+                        return new MockResponse().setResponseCode(503);
+                    } else if (path.startsWith("/timeout") && 1 == count) {
+                        Thread.sleep(READ_TIMEOUT_MS * 3);
+                    } else if (path.startsWith("/broken")) {
+                        return new MockResponse().setResponseCode(500);
+                    } else if (path.startsWith("/missing")) {
+                        return new MockResponse().setResponseCode(404);
+                    } else if (path.startsWith("/tail") && 1 == count) {
+                        Thread.sleep(TAIL_MS);
+                    }
+                    return new MockResponse().setBody("image " + path + " #" + count);
+                } finally {
+                    onResponded(host);
+                }
+            }
+        });
+        mServer.play();
+        mExecutor = Executors.newFixedThreadPool(32);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != mScheduler) {
+            mScheduler.shutdown();
+        }
+        mExecutor.shutdownNow();
+        mServer.shutdown();
+    }
+
+    private DownloadScheduler.Builder newBuilder() {
+        return new DownloadScheduler.Builder(mClient, mExecutor)
+                .setRetry(3, 20, 200);
+    }
+
+    private Result download(String host, String path, boolean urgent) {
+        Result result = new Result();
+        Request request = new Request.Builder()
+                .url("http://" + host + ":" + mServer.getPort() + path)
+                .build();
+        mScheduler.enqueue(request, urgent, result);
+        return result;
+    }
+
+    @Test
+    public void perHostLimit() throws Exception {
+        mScheduler = newBuilder().setMaxRequestsPerHost(3).build();
+        // the same server by two host names, each has its own limit
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 24; ++i) {
+            results.add(download(0 == i % 2 ? "localhost" : "127.0.0.1", "/slow/" + i, false));
+        }
+        for (Result result : results) {
+            result.await();
+            assertNull(result.failure);
+            assertEquals(200, result.code);
+        }
+        for (String host : new String[]{"localhost", "127.0.0.1"}) {
+            final int max = getMaxRunning(host + ":" + mServer.getPort());
+            assertTrue(host + " ran " + max + " at the same time", max <= 3);
+            assertTrue(host + " ran " + max + " at the same time", max >= 2);
+        }
+    }
+
+    @Test
+    public void retryTransientErrors() throws Exception {
+        mClient.setReadTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        mScheduler = newBuilder().build();
+        Result flaky = download("localhost", "/flaky", false);
+        Result timeout = download("localhost", "/timeout", false);
+        flaky.await();
+        timeout.await();
+
+        assertEquals(200, flaky.code);
+        assertEquals("image /flaky #3", flaky.body);
+        assertEquals(3, getRequestCount("/flaky"));
+        assertEquals(200, timeout.code);
+        assertEquals(2, getRequestCount("/timeout"));
+        assertEquals(3, mScheduler.getRetryCount());
+    }
+
+    @Test
+    public void giveUp() throws Exception {
+        mScheduler = newBuilder().build();
+        Result broken = download("localhost", "/broken", false);
+        Result missing = download("localhost", "/missing", false);
+        broken.await();
+        missing.await();
+
+        // 1 request and 3 retries
+        assertNotNull(broken.failure);
+        assertEquals(4, getRequestCount("/broken"));
+        // not transient, it's answered as it is
+        assertNull(missing.failure);
+        assertEquals(404, missing.code);
+        assertEquals(1, getRequestCount("/missing"));
+    }
+
+    @Test
+    public void hedgeSlowTail() throws Exception {
+        mScheduler = newBuilder().setHedgeDelay(200).build();
+        final long start = System.nanoTime();
+        Result urgent = download("localhost", "/tail/urgent", true);
+        urgent.await();
+        final long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertEquals("image /tail/urgent #2", urgent.body);
+        assertTrue("hedged download took " + elapsedMs + " ms", elapsedMs < TAIL_MS / 2);
+        assertEquals(1, mScheduler.getHedgeCount());
+
+        // prefetch is never hedged
+        Result prefetch = download("localhost", "/tail/prefetch", false);
+        prefetch.await();
+        assertEquals("image /tail/prefetch #1", prefetch.body);
+        assertEquals(1, mScheduler.getHedgeCount());
+    }
+
+    @Test
+    public void promoteQueuedPrefetch() throws Exception {
+        mScheduler = newBuilder().setMaxRequestsPerHost(1).build();
+        // the host is busy, the others wait in its queue
+        Result busy = download("localhost", "/slow/busy", false);
+        List<Result> prefetches = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            prefetches.add(download("localhost", "/slow/prefetch" + i, false));
+        }
+        Result wanted = new Result();
+        Request request = new Request.Builder()
+                .url("http://localhost:" + mServer.getPort() + "/slow/wanted")
+                .build();
+        mScheduler.enqueue(request, false, wanted);
+
+        // a view starts waiting for the last one
+        assertTrue(mScheduler.promote(request, wanted));
+        wanted.await();
+        assertEquals(200, wanted.code);
+        // one at a time, it's served right after the one which was running
+        for (Result prefetch : prefetches) {
+            prefetch.await();
+            assertTrue(wanted.finishedAt < prefetch.finishedAt);
+        }
+        assertFalse(mScheduler.promote(request, wanted));
+    }
+
+    @Test
+    public void dropCancelled() throws Exception {
+        mScheduler = newBuilder().setMaxRequestsPerHost(1).build();
+        Result running = download("localhost", "/tail/running", false);
+        List<Result> queued = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            queued.add(download("localhost", "/slow/queued" + i, false));
+        }
+        // nobody waits for any of them now
+        for (Result result : queued) {
+            result.cancelled = true;
+        }
+        running.cancelled = true;
+
+        // pumping the host cancels the running call, the queued ones never reach the server
+        final long start = System.nanoTime();
+        Result wanted = download("localhost", "/slow/wanted", false);
+        wanted.await();
+        final long elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertEquals(200, wanted.code);
+        assertTrue("waited " + elapsedMs + " ms for a cancelled call", elapsedMs < TAIL_MS / 2);
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(0, getRequestCount("/slow/queued" + i));
+            assertEquals(1, queued.get(i).latch.getCount());
+        }
+        assertEquals(1, running.latch.getCount());
+    }
+
+    @Test
+    public void backoffWithJitter() {
+        Random random = new Random(1);
+        for (int retry = 0; retry < 10; ++retry) {
+            final long cap = Math.min(8000, 500L << retry);
+            long max = 0;
+            for (int i = 0; i < 200; ++i) {
+                final long delay = DownloadScheduler.getBackoffDelay(retry, 500, 8000, random);
+                assertTrue(delay >= 0 && delay <= cap);
+                max = Math.max(max, delay);
+            }
+            // spread over the whole window
+            assertTrue(max > cap / 2);
+        }
+        assertTrue(DownloadScheduler.getBackoffDelay(100, 500, 8000, random) <= 8000);
+    }
+}
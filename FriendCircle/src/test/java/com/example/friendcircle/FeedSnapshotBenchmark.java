@@ -0,0 +1,55 @@
+package com.example.friendcircle;
+
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loading {@link FeedSnapshot} against reparsing Json at launch on large synthetic feeds.
+ * It only prints numbers, so it's not in the unit tests, remove Ignore to run it by hand.
+ */
+@Ignore("benchmark, run by hand")
+public class FeedSnapshotBenchmark {
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void snapshotAgainstJson() throws Exception {
+        final int rounds = 10;
+        for (int count : new int[] {1000, 10000}) {
+            String json = JsonParserUtilTest.buildFeed(count);
+            File file = mTemporaryFolder.newFile("feed" + count + ".snapshot");
+            FeedSnapshot.write(file, FeedSnapshotTest.newUser(), JsonParserUtil.parseTweetFromJson(json));
+
+            // warmup both, JIT compiles them before measuring
+            for (int i = 0; i < 5; ++i) {
+                JsonParserUtil.parseTweetFromJson(json);
+                FeedSnapshot.read(file);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; ++i) {
+                assertFalse(JsonParserUtil.parseTweetFromJson(json).isEmpty());
+            }
+            long jsonTime = (System.nanoTime() - start) / rounds;
+
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; ++i) {
+                assertFalse(FeedSnapshot.read(file).getmTweetList().isEmpty());
+            }
+            long snapshotTime = (System.nanoTime() - start) / rounds;
+
+            System.out.println(String.format("feed of %d tweets: json %d KB reparsed in %.2f ms;"
+                            + " snapshot %d KB loaded in %.2f ms",
+                    count, json.length() / 1024, jsonTime / 1e6, file.length() / 1024, snapshotTime / 1e6));
+
+            JsonParserUtilTest.assertTweetsEquals(JsonParserUtil.parseTweetFromJson(json),
+                    FeedSnapshot.read(file).getmTweetList());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+import com.example.friendcircle.bean.UserBean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trip of {@link FeedSnapshot}, see {@link FeedSnapshotBenchmark} for its load time against reparsing Json.
+ */
+public class FeedSnapshotTest {
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    static UserBean newUser() {
+        UserBean user = new UserBean();
+        user.setProfileimage("http://a.com/profile.png");
+        user.setAvatar("http://a.com/avatar.png");
+        user.setNick("沙发 John");
+        user.setUsername("jsmith");
+        return user;
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        File file = mTemporaryFolder.newFile("feed.snapshot");
+        UserBean user = newUser();
+        List<TweetBean> tweets = JsonParserUtil.parseTweetFromJson(JsonParserUtilTest.buildFeed(200));
+        FeedSnapshot.write(file, user, tweets);
+
+        FeedSnapshot snapshot = FeedSnapshot.read(file);
+        assertEquals(user.getProfileimage(), snapshot.getmUser().getProfileimage());
+        assertEquals(user.getAvatar(), snapshot.getmUser().getAvatar());
+        assertEquals(user.getNick(), snapshot.getmUser().getNick());
+        assertEquals(user.getUsername(), snapshot.getmUser().getUsername());
+        JsonParserUtilTest.assertTweetsEquals(tweets, snapshot.getmTweetList());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void nulls() throws Exception {
+        File file = mTemporaryFolder.newFile("feed.snapshot");
+        String json = "[{\"content\":null,\"sender\":null,\"images\":null,\"comments\":[null]},null,"
+                + "{\"content\":\"c\",\"images\":[{\"url\":null}],\"comments\":[{\"content\":\"x\"}]}]";
+        List<TweetBean> tweets = JsonParserUtil.parseTweetFromJson(json);
+        FeedSnapshot.write(file, new UserBean(), tweets);
+
+        FeedSnapshot snapshot = FeedSnapshot.read(file);
+        assertNull(snapshot.getmUser().getNick());
+        JsonParserUtilTest.assertTweetsEquals(tweets, snapshot.getmTweetList());
+    }
+
+    @Test
+    public void missingFile_null() throws Exception {
+        assertNull(FeedSnapshot.read(new File(mTemporaryFolder.getRoot(), "none")));
+    }
+
+    @Test(expected = IOException.class)
+    public void brokenFile_throw() throws Exception {
+        File file = mTemporaryFolder.newFile("feed.snapshot");
+        FeedSnapshot.write(file, newUser(), JsonParserUtil.parseTweetFromJson(JsonParserUtilTest.buildFeed(20)));
+
+        // cut it in the middle
+        byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes, 0, bytes.length / 2);
+        out.close();
+        FeedSnapshot.read(file);
+    }
+
+    @Test
+    public void corruptCounts_throw() throws Exception {
+        File file = mTemporaryFolder.newFile("feed.snapshot");
+        FeedSnapshot.write(file, newUser(), JsonParserUtil.parseTweetFromJson(JsonParserUtilTest.buildFeed(20)));
+        final byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
+
+        // count of string table after magic and version
+        for (int count : new int[] {-2, Integer.MAX_VALUE}) {
+            java.nio.ByteBuffer.wrap(bytes).putInt(8, count);
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(bytes);
+            out.close();
+            try {
+                FeedSnapshot.read(file);
+                fail("count " + count + " is read");
+            } catch (IOException e) {
+                assertEquals("broken snapshot", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parse time and allocation of {@link JsonParserUtil} against reflection-based Gson on large synthetic feeds.
+ * It takes a while and only prints numbers, so it's not in the unit tests, remove Ignore to run it by hand.
+ */
+@Ignore("benchmark, run by hand")
+public class JsonParserUtilBenchmark {
+    @Test
+    public void largeFeeds() throws Exception {
+        for (int count : new int[] {1000, 10000}) {
+            String json = JsonParserUtilTest.buildFeed(count);
+
+            // warmup both, JIT compiles them before measuring
+            for (int i = 0; i < 5; ++i) {
+                JsonParserUtilTest.parseByReflection(json);
+                JsonParserUtil.parseTweetFromJson(json);
+            }
+
+            long[] reflection = measure(json, true);
+            long[] adapters = measure(json, false);
+            System.out.println(String.format("feed of %d tweets (%d KB): reflection %.2f ms, %d KB allocated;"
+                            + " type adapters %.2f ms, %d KB allocated",
+                    count, json.length() / 1024,
+                    reflection[0] / 1e6, reflection[1] / 1024, adapters[0] / 1e6, adapters[1] / 1024));
+
+            JsonParserUtilTest.assertTweetsEquals(JsonParserUtilTest.parseByReflection(json),
+                    JsonParserUtil.parseTweetFromJson(json));
+        }
+    }
+
+    private static final int ROUNDS = 10;
+
+    /**
+     * @return {average nanoseconds, average allocated bytes or -1 if it's not supported} of a parse
+     */
+    private static long[] measure(String json, boolean byReflection) throws Exception {
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            List<TweetBean> tweets = byReflection
+                    ? JsonParserUtilTest.parseByReflection(json) : JsonParserUtil.parseTweetFromJson(json);
+            assertFalse(tweets.isEmpty());
+        }
+        long time = (System.nanoTime() - start) / ROUNDS;
+        long allocatedAfter = getAllocatedBytes();
+        long allocated = allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / ROUNDS;
+        return new long[] {time, allocated};
+    }
+
+    /**
+     * bytes allocated by current thread, HotSpot supports it by com.sun.management.ThreadMXBean
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+import com.example.friendcircle.bean.UserBean;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hand-written TypeAdapters of {@link JsonParserUtil} against reflection-based Gson,
+ * see {@link JsonParserUtilBenchmark} for parse time and allocation on large feeds.
+ */
+public class JsonParserUtilTest {
+    private static final String USER_JSON = "{\"profile-image\":\"http://a.com/profile.png\","
+            + "\"avatar\":\"http://a.com/avatar.png\",\"nick\":\"John Smith\",\"username\":\"jsmith\","
+            + "\"unknown\":{\"nested\":[1,2,3]}}";
+
+    /**
+     * synthetic feed like the real one: some tweets have images and comments, some are invalid
+     */
+    static String buildFeed(int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) sb.append(',');
+            if (i % 17 == 16) {
+                // invalid tweet without sender
+                sb.append("{\"content\":\"no sender ").append(i).append("\"}");
+                continue;
+            }
+            sb.append("{\"content\":\"tweet ").append(i).append(" \\u6c99\\u53d1\\uff01 \\\"quoted\\\"\",");
+            sb.append("\"sender\":{\"username\":\"user").append(i % 50).append("\",\"nick\":\"Nick ")
+                    .append(i % 50).append("\",\"avatar\":\"http://a.com/avatar/").append(i % 50).append(".jpg\"},");
+            sb.append("\"images\":[");
+            for (int j = 0, size = i % 10; j < size; ++j) {
+                if (j > 0) sb.append(',');
+                sb.append("{\"url\":\"http://a.com/image/").append(i).append('_').append(j).append(".jpg\"}");
+            }
+            sb.append("],\"comments\":[");
+            for (int j = 0, size = i % 4; j < size; ++j) {
+                if (j > 0) sb.append(',');
+                sb.append("{\"content\":\"comment ").append(j).append("\",\"sender\":{\"username\":\"c")
+                        .append(j).append("\",\"nick\":\"Commenter ").append(j)
+                        .append("\",\"avatar\":\"http://a.com/c.jpg\"}}");
+            }
+            sb.append("],\"error\":null}");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * how the feed was parsed before: a new Gson and TypeToken for each call, beans bound by reflection
+     */
+    static LinkedList<TweetBean> parseByReflection(String json) {
+        return new Gson().fromJson(json, new TypeToken<LinkedList<TweetBean>>(){}.getType());
+    }
+
+    private static void assertSenderEquals(TweetBean.SenderBean expected, TweetBean.SenderBean actual) {
+        if (null == expected) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.getUsername(), actual.getUsername());
+        assertEquals(expected.getNick(), actual.getNick());
+        assertEquals(expected.getAvatar(), actual.getAvatar());
+    }
+
+    static void assertTweetsEquals(List<TweetBean> expected, List<TweetBean> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            TweetBean e = expected.get(i);
+            TweetBean a = actual.get(i);
+            if (null == e) {
+                assertNull(a);
+                continue;
+            }
+            assertEquals(e.getContent(), a.getContent());
+            assertSenderEquals(e.getSender(), a.getSender());
+            if (null == e.getImages()) {
+                assertNull(a.getImages());
+            } else {
+                assertEquals(e.getImages().size(), a.getImages().size());
+                for (int j = 0; j < e.getImages().size(); ++j) {
+                    assertEquals(e.getImages().get(j).getUrl(), a.getImages().get(j).getUrl());
+                }
+            }
+            if (null == e.getComments()) {
+                assertNull(a.getComments());
+            } else {
+                assertEquals(e.getComments().size(), a.getComments().size());
+                for (int j = 0; j < e.getComments().size(); ++j) {
+                    if (null == e.getComments().get(j)) {
+                        assertNull(a.getComments().get(j));
+                        continue;
+                    }
+                    assertEquals(e.getComments().get(j).getContent(), a.getComments().get(j).getContent());
+                    assertSenderEquals(e.getComments().get(j).getSender(), a.getComments().get(j).getSender());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parseUser_sameAsReflection() throws Exception {
+        UserBean expected = new Gson().fromJson(USER_JSON, UserBean.class);
+        UserBean actual = JsonParserUtil.parseUserFromJson(USER_JSON);
+        assertEquals("http://a.com/profile.png", actual.getProfileimage());
+        assertEquals(expected.getProfileimage(), actual.getProfileimage());
+        assertEquals(expected.getAvatar(), actual.getAvatar());
+        assertEquals(expected.getNick(), actual.getNick());
+        assertEquals(expected.getUsername(), actual.getUsername());
+    }
+
+    @Test
+    public void parseTweets_sameAsReflection() throws Exception {
+        String json = buildFeed(200);
+        assertTweetsEquals(parseByReflection(json), JsonParserUtil.parseTweetFromJson(json));
+    }
+
+    @Test
+    public void parseTweets_nullsAndUnknownFields() throws Exception {
+        String json = "[{\"content\":null,\"sender\":null,\"images\":null,\"comments\":[null],"
+                + "\"extra\":[{\"a\":1}]},null,{\"content\":\"c\",\"images\":[{\"url\":\"u\",\"w\":100}]}]";
+        assertTweetsEquals(parseByReflection(json), JsonParserUtil.parseTweetFromJson(json));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Retained heap of a large feed parsed with {@link ModelInterner} against the feed parsed before,
+ * where every tweet and comment has its own sender and strings.
+ * It measures heap around System.gc(), which is only a hint, so it's not in the unit tests,
+ * remove Ignore to run it by hand.
+ */
+@Ignore("benchmark, run by hand")
+public class ModelInternerBenchmark {
+    @Before
+    public void setUp() {
+        ModelInterner.getDefault().clear();
+    }
+
+    /**
+     * the same feed with its own sender and strings everywhere, as it was parsed before
+     */
+    private static List<TweetBean> copyWithoutSharing(List<TweetBean> tweets) {
+        List<TweetBean> copies = new ArrayList<>(tweets.size());
+        for (TweetBean tweet : tweets) {
+            TweetBean copy = new TweetBean();
+            copy.setContent(new String(tweet.getContent()));
+            copy.setSender(copySender(tweet.getSender()));
+            List<TweetBean.ImagesBean> images = new ArrayList<>();
+            for (TweetBean.ImagesBean image : tweet.getImages()) {
+                TweetBean.ImagesBean imageCopy = new TweetBean.ImagesBean();
+                imageCopy.setUrl(new String(image.getUrl()));
+                images.add(imageCopy);
+            }
+            copy.setImages(images);
+            List<TweetBean.CommentBean> comments = new ArrayList<>();
+            for (TweetBean.CommentBean comment : tweet.getComments()) {
+                TweetBean.CommentBean commentCopy = new TweetBean.CommentBean();
+                commentCopy.setContent(new String(comment.getContent()));
+                commentCopy.setSender(copySender(comment.getSender()));
+                comments.add(commentCopy);
+            }
+            copy.setComments(comments);
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static TweetBean.SenderBean copySender(TweetBean.SenderBean sender) {
+        return new TweetBean.SenderBean(new String(sender.getUsername()), new String(sender.getNick()),
+                new String(sender.getAvatar()));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; ++i) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    @Test
+    public void retainedHeap() throws Exception {
+        final String json = ModelInternerTest.buildLargeFeed(20000);
+        final long base = usedHeap();
+        List<TweetBean> interned = JsonParserUtil.parseTweetFromJson(json);
+        final long internedBytes = usedHeap() - base;
+
+        List<TweetBean> copies = copyWithoutSharing(interned);
+        interned = null;
+        final long copiedBytes = usedHeap() - base;
+
+        System.out.printf("retained heap of 20000 tweets: not shared %d KB, interned %d KB%n",
+                copiedBytes / 1024, internedBytes / 1024);
+        assertEquals(20000, copies.size());
+        assertTrue(internedBytes < copiedBytes * 3 / 4);
+    }
+}
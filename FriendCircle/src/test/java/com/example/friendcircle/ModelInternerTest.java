@@ -0,0 +1,110 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ModelInterner} shares senders and urls of parsed feeds, see {@link ModelInternerBenchmark}
+ * for the retained heap it saves.
+ */
+public class ModelInternerTest {
+    private static final int USER_COUNT = 300;
+    private static final int IMAGE_COUNT = 1000;
+
+    @Before
+    public void setUp() {
+        ModelInterner.getDefault().clear();
+    }
+
+    /**
+     * large feed like the real one: few users write many tweets and comments, images are reposted
+     */
+    static String buildLargeFeed(int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"content\":\"tweet ").append(i).append("\",\"sender\":");
+            appendSender(sb, i % USER_COUNT);
+            sb.append(",\"images\":[");
+            for (int j = 0, size = i % 4; j < size; ++j) {
+                if (j > 0) sb.append(',');
+                sb.append("{\"url\":\"https://img.example.com/images/").append((i * 7 + j) % IMAGE_COUNT)
+                        .append(".jpg\"}");
+            }
+            sb.append("],\"comments\":[");
+            for (int j = 0, size = i % 5; j < size; ++j) {
+                if (j > 0) sb.append(',');
+                sb.append("{\"content\":\"comment ").append(j).append("\",\"sender\":");
+                appendSender(sb, (i + j * 31) % USER_COUNT);
+                sb.append('}');
+            }
+            sb.append("]}");
+        }
+        return sb.append(']').toString();
+    }
+
+    private static void appendSender(StringBuilder sb, int user) {
+        sb.append("{\"username\":\"user").append(user).append("\",\"nick\":\"Nick Name ").append(user)
+                .append("\",\"avatar\":\"https://img.example.com/avatars/").append(user).append(".jpg\"}");
+    }
+
+    @Test
+    public void sender_sharedByUsername() {
+        List<TweetBean> tweets = JsonParserUtil.parseTweetFromJson(buildLargeFeed(2000));
+        Map<TweetBean.SenderBean, Boolean> senders = new IdentityHashMap<>();
+        Map<String, Boolean> urls = new IdentityHashMap<>();
+        Set<String> distinctUrls = new HashSet<>();
+        for (TweetBean tweet : tweets) {
+            senders.put(tweet.getSender(), true);
+            urls.put(tweet.getSender().getAvatar(), true);
+            for (TweetBean.ImagesBean image : tweet.getImages()) {
+                urls.put(image.getUrl(), true);
+            }
+            for (TweetBean.CommentBean comment : tweet.getComments()) {
+                senders.put(comment.getSender(), true);
+                urls.put(comment.getSender().getAvatar(), true);
+            }
+        }
+        assertEquals(USER_COUNT, senders.size());
+        distinctUrls.addAll(urls.keySet());
+        assertEquals(distinctUrls.size(), urls.size());
+    }
+
+    @Test
+    public void sender_changedNickIsNotShared() {
+        ModelInterner interner = ModelInterner.getDefault();
+        TweetBean.SenderBean first = interner.sender("jport", "Joe Portman", "http://a.com/a.jpg");
+        assertSame(first, interner.sender(new String("jport"), "Joe Portman", new String("http://a.com/a.jpg")));
+
+        TweetBean.SenderBean renamed = interner.sender("jport", "Joe", "http://a.com/a.jpg");
+        assertNotSame(first, renamed);
+        assertEquals("Joe Portman", first.getNick());
+        assertEquals("Joe", renamed.getNick());
+        assertSame(first.getAvatar(), renamed.getAvatar());
+        assertSame(renamed, interner.sender("jport", "Joe", "http://a.com/a.jpg"));
+
+        // unknown user is never shared
+        assertNotSame(interner.sender(null, "x", null), interner.sender(null, "x", null));
+    }
+
+    @Test
+    public void getUrlKeys_builtOnce() {
+        ModelInterner interner = ModelInterner.getDefault();
+        ModelInterner.UrlKeys keys = interner.getUrlKeys("http://a.com/a.jpg");
+        assertSame(keys, interner.getUrlKeys(new String("http://a.com/a.jpg")));
+        assertSame(keys.url, interner.internUrl(new String("http://a.com/a.jpg")));
+        assertEquals(32, keys.getDiskKey().length());
+        assertSame(keys.getDiskKey(), keys.getDiskKey());
+        assertNotEquals(keys.getDiskKey(), interner.getUrlKeys("http://a.com/b.jpg").getDiskKey());
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link PagedTweetSource} against a stand-in server which pages a feed by offset and limit.
+ * Pages are loaded synchronously here, in app they are loaded by ImageLoader in sub-thread.
+ */
+public class PagedTweetSourceTest {
+    private static final int PAGE_SIZE = 20;
+    private static final int FEED_SIZE = 95;
+
+    private MockWebServer mServer;
+    private final OkHttpClient mClient = new OkHttpClient();
+    private final List<String> mRequestedPaths = new ArrayList<>();
+    // the stand-in server answers 500 when it's set
+    private volatile boolean mServerBroken;
+    // the stand-in server ignores offset and limit when it's set
+    private volatile boolean mServerNotPaging;
+
+    // uptime of source, backoff of failed pages passes when it's moved on
+    private long mNow;
+
+    private int mInserted;
+    private int mChanged;
+    private int mFailed;
+
+    /**
+     * entry of feed at index, some entries are invalid tweets without sender
+     */
+    private static String entry(int index) {
+        if (index % 17 == 16) {
+            return "{\"content\":\"no sender " + index + "\"}";
+        }
+        return "{\"content\":\"tweet " + index + "\",\"sender\":{\"username\":\"u" + index
+                + "\",\"nick\":\"n\",\"avatar\":\"http://a.com/a.jpg\"}}";
+    }
+
+    private static int queryInt(String path, String name, int defaultValue) {
+        int start = path.indexOf(name + "=");
+        if (start < 0) return defaultValue;
+        start += name.length() + 1;
+        int end = path.indexOf('&', start);
+        return Integer.parseInt(path.substring(start, end < 0 ? path.length() : end));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                synchronized (mRequestedPaths) {
+                    mRequestedPaths.add(request.getPath());
+                }
+                if (mServerBroken) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                int offset = mServerNotPaging ? 0 : queryInt(request.getPath(), "offset", 0);
+                int limit = mServerNotPaging ? FEED_SIZE : queryInt(request.getPath(), "limit", FEED_SIZE);
+                StringBuilder sb = new StringBuilder("[");
+                for (int i = offset; i < Math.min(FEED_SIZE, offset + limit); ++i) {
+                    if (i > offset) sb.append(',');
+                    sb.append(entry(i));
+                }
+                return new MockResponse().setBody(sb.append(']').toString());
+            }
+        });
+        mServer.play();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    private PagedTweetSource newSource(int maxPagesInMemory) {
+        PagedTweetSource source = new PagedTweetSource(new PagedTweetSource.PageLoader() {
+            @Override
+            public void loadPage(String url, ImageLoader.TweetsPageCallBack callBack) {
+                try {
+                    Response response = mClient.newCall(new Request.Builder().url(url).build()).execute();
+                    if (!response.isSuccessful()) {
+                        response.body().close();
+                        callBack.onTweetsPageFailed();
+                        return;
+                    }
+                    callBack.onTweetsPageLoaded(JsonParserUtil.parseTweetsPageFromJson(response.body().charStream(),
+                            PAGE_SIZE, PAGE_SIZE, new JsonParserUtil.TweetsBatchListener() {
+                                @Override
+                                public void onTweetsBatch(List<TweetBean> tweets) {
+                                }
+                            }));
+                } catch (IOException e) {
+                    callBack.onTweetsPageFailed();
+                }
+            }
+        }, mServer.getUrl("/tweets").toString(), PAGE_SIZE, maxPagesInMemory) {
+            @Override
+            long now() {
+                return mNow;
+            }
+        };
+        source.setListener(new PagedTweetSource.Listener() {
+            @Override
+            public void onTweetsInserted(int position, int count) {
+                mInserted += count;
+            }
+
+            @Override
+            public void onTweetsChanged(int position, int count) {
+                ++mChanged;
+            }
+
+            @Override
+            public void onPageFailed() {
+                ++mFailed;
+            }
+        });
+        return source;
+    }
+
+    private static int validCount(int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; ++i) {
+            if (i % 17 != 16) ++count;
+        }
+        return count;
+    }
+
+    private static void readAll(PagedTweetSource source) {
+        for (int i = 0; i < source.size(); ++i) {
+            source.setReadingPosition(i);
+            assertNotNull(source.get(i));
+        }
+    }
+
+    @Test
+    public void pagesPrefetchedUntilLast() throws Exception {
+        PagedTweetSource source = newSource(10);
+        TweetFeed firstPage = JsonParserUtil.parseTweetsPageFromJson(
+                new StringReader(firstPageJson()), PAGE_SIZE, PAGE_SIZE, NO_BATCH).tweets;
+        source.setFirstPage(firstPage);
+        source.finishFirstPage();
+        assertEquals(0, mRequestedPaths.size());
+
+        // next page is requested before reaching the end
+        source.get(firstPage.size() - PAGE_SIZE / 2 - 1);
+        assertEquals(0, mRequestedPaths.size());
+        source.get(firstPage.size() - PAGE_SIZE / 2);
+        assertEquals(1, mRequestedPaths.size());
+        assertEquals("/tweets?offset=20&limit=20", mRequestedPaths.get(0));
+
+        readAll(source);
+        assertTrue(source.isLastPageLoaded());
+        assertEquals(validCount(0, FEED_SIZE), source.size());
+        assertEquals(validCount(PAGE_SIZE, FEED_SIZE), mInserted);
+        assertEquals(4, mRequestedPaths.size());
+        assertEquals("/tweets?offset=80&limit=20", mRequestedPaths.get(3));
+        assertEquals("tweet 94", source.get(source.size() - 1).getContent());
+
+        // nothing more is requested after the last page
+        source.loadNextPage();
+        assertEquals(4, mRequestedPaths.size());
+    }
+
+    @Test
+    public void pagesInMemoryAreCapped() throws Exception {
+        PagedTweetSource source = newSource(2);
+        source.setFirstPage(JsonParserUtil.parseTweetsPageFromJson(
+                new StringReader(firstPageJson()), PAGE_SIZE, PAGE_SIZE, NO_BATCH).tweets);
+        source.finishFirstPage();
+        readAll(source);
+        assertTrue(source.getPagesInMemory() <= 2);
+        assertNull(source.asList().get(0));
+
+        // the dropped page is loaded again when user scrolls back
+        int requests = mRequestedPaths.size();
+        TweetBean first = source.get(0);
+        assertEquals("tweet 0", first.getContent());
+        assertEquals("/tweets?offset=0&limit=20", mRequestedPaths.get(requests));
+        assertEquals(1, mChanged);
+        assertTrue(source.getPagesInMemory() <= 2);
+        assertEquals(validCount(0, FEED_SIZE), source.size());
+    }
+
+    @Test
+    public void failedPageIsRetriedByUser() throws Exception {
+        PagedTweetSource source = newSource(10);
+        source.setFirstPage(JsonParserUtil.parseTweetsPageFromJson(
+                new StringReader(firstPageJson()), PAGE_SIZE, PAGE_SIZE, NO_BATCH).tweets);
+        source.finishFirstPage();
+
+        mServerBroken = true;
+        source.get(source.size() - 1);
+        source.get(source.size() - 1);
+        assertEquals(1, mRequestedPaths.size());
+        assertEquals(1, mFailed);
+
+        mServerBroken = false;
+        source.loadNextPage();
+        assertEquals(2, mRequestedPaths.size());
+        assertEquals(validCount(0, 2 * PAGE_SIZE), source.size());
+    }
+
+    @Test
+    public void failedPageIsRetriedAfterBackoff() throws Exception {
+        PagedTweetSource source = newSource(2);
+        source.setFirstPage(JsonParserUtil.parseTweetsPageFromJson(
+                new StringReader(firstPageJson()), PAGE_SIZE, PAGE_SIZE, NO_BATCH).tweets);
+        source.finishFirstPage();
+        readAll(source);
+        assertNull(source.asList().get(0));
+
+        // binding the dropped page again doesn't request it until backoff passes
+        mServerBroken = true;
+        int requests = mRequestedPaths.size();
+        source.setReadingPosition(0);
+        assertNull(source.get(0));
+        assertNull(source.get(0));
+        assertEquals(requests + 1, mRequestedPaths.size());
+        assertEquals(1, mFailed);
+
+        mNow += 2000;
+        assertNull(source.get(0));
+        assertEquals(requests + 2, mRequestedPaths.size());
+        assertEquals(2, mFailed);
+
+        // it's doubled for the second failure
+        mNow += 2000;
+        assertNull(source.get(0));
+        assertEquals(requests + 2, mRequestedPaths.size());
+
+        mServerBroken = false;
+        mNow += 2000;
+        assertEquals("tweet 0", source.get(0).getContent());
+        assertEquals(requests + 3, mRequestedPaths.size());
+        assertEquals(2, mFailed);
+    }
+
+    @Test
+    public void prefetchBindingKeepsReadingPage() throws Exception {
+        PagedTweetSource source = newSource(2);
+        source.setFirstPage(JsonParserUtil.parseTweetsPageFromJson(
+                new StringReader(firstPageJson()), PAGE_SIZE, PAGE_SIZE, NO_BATCH).tweets);
+        source.finishFirstPage();
+
+        // rows of the next pages are bound ahead while user is still reading the first page
+        source.setReadingPosition(0);
+        for (int i = 0; i < source.size(); ++i) {
+            source.get(i);
+        }
+        assertNotNull(source.asList().get(0));
+        assertTrue(source.getPagesInMemory() <= 2);
+    }
+
+    @Test
+    public void serverNotPaging_wholeFeedIsTheLastPage() throws Exception {
+        mServerNotPaging = true;
+        PagedTweetSource source = newSource(10);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < FEED_SIZE; ++i) {
+            if (i > 0) sb.append(',');
+            sb.append(entry(i));
+        }
+        source.setFirstPage(JsonParserUtil.parseTweetsPageFromJson(
+                new StringReader(sb.append(']').toString()), PAGE_SIZE, PAGE_SIZE, NO_BATCH).tweets);
+        source.finishFirstPage();
+
+        readAll(source);
+        assertTrue(source.isLastPageLoaded());
+        assertEquals(0, mRequestedPaths.size());
+        assertEquals(validCount(0, FEED_SIZE), source.size());
+    }
+
+    @Test
+    public void nextPagesWaitForFirstPage() throws Exception {
+        PagedTweetSource source = newSource(10);
+        source.setFirstPage(TweetFeed.empty());
+        source.appendToFirstPage(JsonParserUtil.parseTweetsPageFromJson(
+                new StringReader(firstPageJson()), PAGE_SIZE, PAGE_SIZE, NO_BATCH).tweets);
+
+        // first page is still being parsed
+        source.get(source.size() - 1);
+        assertEquals(0, mRequestedPaths.size());
+
+        // user is at the end already
+        source.finishFirstPage();
+        assertEquals(1, mRequestedPaths.size());
+    }
+
+    private static final JsonParserUtil.TweetsBatchListener NO_BATCH = new JsonParserUtil.TweetsBatchListener() {
+        @Override
+        public void onTweetsBatch(List<TweetBean> tweets) {
+        }
+    };
+
+    private static String firstPageJson() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < PAGE_SIZE; ++i) {
+            if (i > 0) sb.append(',');
+            sb.append(entry(i));
+        }
+        return sb.append(']').toString();
+    }
+}
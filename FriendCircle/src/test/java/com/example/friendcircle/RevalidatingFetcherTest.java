@@ -0,0 +1,132 @@
+package com.example.friendcircle;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Revalidation of feed Json against a stand-in server: the second request is answered by 304,
+ * the model parsed from the first response is reused.
+ */
+public class RevalidatingFetcherTest {
+    private static final String BODY = "[{\"content\":\"hello\",\"sender\":{\"username\":\"jsmith\"}}]";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+    private RevalidatingFetcher mFetcher;
+
+    // how many times the body is parsed by the parser
+    private int mParsed;
+
+    private final RevalidatingFetcher.Parser<String> mParser = new RevalidatingFetcher.Parser<String>() {
+        @Override
+        public String parse(Response response) throws IOException {
+            ++mParsed;
+            return response.body().string();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        OkHttpClient client = new OkHttpClient();
+        client.setCache(new Cache(mTemporaryFolder.newFolder("http"), 1024*1024));
+        mFetcher = new RevalidatingFetcher(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    private RevalidatingFetcher.Result<String> fetch(String url) throws IOException {
+        Call call = mFetcher.newCall(url);
+        return mFetcher.execute(call, url, mParser);
+    }
+
+    @Test
+    public void etag_notModified_reuseParsedModel() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY).addHeader("ETag", "\"v1\""));
+        mServer.enqueue(new MockResponse().setResponseCode(304).addHeader("ETag", "\"v1\""));
+        mServer.play();
+        String url = mServer.getUrl("/tweets").toString();
+
+        RevalidatingFetcher.Result<String> first = fetch(url);
+        assertFalse(first.reused);
+        assertEquals(BODY, first.model);
+
+        RevalidatingFetcher.Result<String> second = fetch(url);
+        assertTrue(second.reused);
+        assertSame(first.model, second.model);
+        assertEquals(1, mParsed);
+        assertEquals(1, mFetcher.getParseCount());
+        assertEquals(1, mFetcher.getReuseCount());
+
+        assertNull(mServer.takeRequest().getHeader("If-None-Match"));
+        RecordedRequest revalidation = mServer.takeRequest();
+        assertEquals("\"v1\"", revalidation.getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void lastModified_notModified_reuseParsedModel() throws Exception {
+        String lastModified = "Mon, 27 Nov 2017 08:00:00 GMT";
+        mServer.enqueue(new MockResponse().setBody(BODY).addHeader("Last-Modified", lastModified));
+        mServer.enqueue(new MockResponse().setResponseCode(304));
+        mServer.play();
+        String url = mServer.getUrl("/user").toString();
+
+        RevalidatingFetcher.Result<String> first = fetch(url);
+        RevalidatingFetcher.Result<String> second = fetch(url);
+        assertTrue(second.reused);
+        assertSame(first.model, second.model);
+        assertEquals(1, mParsed);
+
+        mServer.takeRequest();
+        assertEquals(lastModified, mServer.takeRequest().getHeader("If-Modified-Since"));
+    }
+
+    @Test
+    public void modified_parseAgain() throws Exception {
+        String changed = "[]";
+        mServer.enqueue(new MockResponse().setBody(BODY).addHeader("ETag", "\"v1\""));
+        mServer.enqueue(new MockResponse().setBody(changed).addHeader("ETag", "\"v2\""));
+        mServer.enqueue(new MockResponse().setResponseCode(304).addHeader("ETag", "\"v2\""));
+        mServer.play();
+        String url = mServer.getUrl("/tweets").toString();
+
+        fetch(url);
+        RevalidatingFetcher.Result<String> second = fetch(url);
+        assertFalse(second.reused);
+        assertEquals(changed, second.model);
+
+        RevalidatingFetcher.Result<String> third = fetch(url);
+        assertTrue(third.reused);
+        assertSame(second.model, third.model);
+        assertEquals(2, mParsed);
+    }
+
+    @Test
+    public void failure_returnNull() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mServer.play();
+
+        assertNull(fetch(mServer.getUrl("/tweets").toString()));
+        assertEquals(0, mParsed);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link TweetBean#getId()} is stable across parsing, and {@link TweetDiffCallback} tells
+ * moved and edited tweets from new ones.
+ */
+public class TweetDiffCallbackTest {
+    private static TweetBean tweet(String username, String content) {
+        TweetBean tweet = new TweetBean();
+        tweet.setSender(new TweetBean.SenderBean(username, username, null));
+        tweet.setContent(content);
+        return tweet;
+    }
+
+    @Test
+    public void getId_stableAcrossParsing() throws Exception {
+        final String json = JsonParserUtilTest.buildFeed(50);
+        List<TweetBean> first = JsonParserUtil.parseTweetFromJson(json);
+        List<TweetBean> second = JsonParserUtil.parseTweetFromJson(json);
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); ++i) {
+            assertNotSame(first.get(i), second.get(i));
+            assertEquals(first.get(i).getId(), second.get(i).getId());
+            assertNotEquals(0, first.get(i).getId());
+            assertNotEquals(-1, first.get(i).getId());
+            assertTrue(first.get(i).getId() >= TweetBean.MIN_ID);
+        }
+        assertNotEquals(first.get(0).getId(), first.get(1).getId());
+    }
+
+    @Test
+    public void getId_identicalPostsOfFeedDiffer() throws Exception {
+        final String entry = "{\"content\":\"same\",\"sender\":{\"username\":\"jport\"}}";
+        final String other = "{\"content\":\"other\",\"sender\":{\"username\":\"jport\"}}";
+        final String json = "[" + entry + "," + entry + "," + other + "," + entry + "]";
+        List<TweetBean> first = JsonParserUtil.filterInvalidTweet(JsonParserUtil.parseTweetFromJson(json));
+        assertEquals(4, first.size());
+        assertEquals(first.get(0).getHash(), first.get(1).getHash());
+        assertNotEquals(first.get(0).getId(), first.get(1).getId());
+        assertNotEquals(first.get(0).getId(), first.get(3).getId());
+        assertNotEquals(first.get(1).getId(), first.get(3).getId());
+        // the first one keeps its hash as id
+        assertEquals(first.get(0).getHash(), first.get(0).getId());
+
+        // the same feed gets the same ids, streamed or not
+        List<TweetBean> second = JsonParserUtil.parseTweetsPageFromJson(new StringReader(json), 2, 2,
+                new JsonParserUtil.TweetsBatchListener() {
+                    @Override
+                    public void onTweetsBatch(List<TweetBean> tweets) {
+                    }
+                }).tweets;
+        for (int i = 0; i < first.size(); ++i) {
+            assertEquals(first.get(i).getId(), second.get(i).getId());
+        }
+    }
+
+    @Test
+    public void getId_separatesFields() {
+        // the same characters split differently between username and content
+        assertNotEquals(tweet("ab", "c").getId(), tweet("a", "bc").getId());
+    }
+
+    @Test
+    public void callback_movedAndEdited() {
+        TweetBean a = tweet("jport", "a");
+        TweetBean b = tweet("jport", "b");
+        TweetBean c = tweet("cyao", "c");
+        TweetBean editedC = tweet("cyao", "c");
+        editedC.setSender(new TweetBean.SenderBean("cyao", "Cheng Yao", null));
+        TweetBean d = tweet("xinge", "d");
+
+        List<TweetBean> oldTweets = Arrays.asList(a, b, c, null);
+        List<TweetBean> newTweets = Arrays.asList(d, a, editedC, tweet("jport", "b"));
+        TweetDiffCallback callback = new TweetDiffCallback(oldTweets, newTweets);
+
+        assertEquals(4, callback.getOldListSize());
+        assertEquals(4, callback.getNewListSize());
+        // a moved
+        assertTrue(callback.areItemsTheSame(0, 1));
+        assertTrue(callback.areContentsTheSame(0, 1));
+        // b parsed again
+        assertTrue(callback.areItemsTheSame(1, 3));
+        assertTrue(callback.areContentsTheSame(1, 3));
+        // c edited, the same row with new content
+        assertTrue(callback.areItemsTheSame(2, 2));
+        assertFalse(callback.areContentsTheSame(2, 2));
+        // d is new
+        for (int i = 0; i < oldTweets.size(); ++i) {
+            assertFalse(callback.areItemsTheSame(i, 0));
+        }
+        // tweet of dropped page is unknown
+        assertFalse(callback.areItemsTheSame(3, 3));
+    }
+
+    @Test
+    public void callback_comments() {
+        TweetBean oldTweet = tweet("jport", "a");
+        TweetBean newTweet = tweet("jport", "a");
+        TweetBean.CommentBean comment = new TweetBean.CommentBean();
+        comment.setContent("good");
+        comment.setSender(oldTweet.getSender());
+        List<TweetBean.CommentBean> comments = new ArrayList<>();
+        comments.add(comment);
+        newTweet.setComments(comments);
+
+        TweetDiffCallback callback = new TweetDiffCallback(Arrays.asList(oldTweet), Arrays.asList(newTweet));
+        // a new comment doesn't change identity, only content
+        assertTrue(callback.areItemsTheSame(0, 0));
+        assertFalse(callback.areContentsTheSame(0, 0));
+    }
+}
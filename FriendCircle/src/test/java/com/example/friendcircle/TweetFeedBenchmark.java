@@ -0,0 +1,61 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Filtering and reading by position of {@link TweetFeed} against the former LinkedList.
+ * It only prints numbers, so it's not in the unit tests, remove Ignore to run it by hand.
+ */
+@Ignore("benchmark, run by hand")
+public class TweetFeedBenchmark {
+    @Test
+    public void filterAndIndex() {
+        final int count = 10000;
+        List<TweetBean> source = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            source.add(TweetFeedTest.tweet("tweet " + i, i % 5 != 0));
+        }
+
+        long start = System.nanoTime();
+        LinkedList<TweetBean> linked = TweetFeedTest.filterLinkedList(new LinkedList<>(source));
+        long linkedFilter = System.nanoTime() - start;
+        start = System.nanoTime();
+        TweetFeed feed = JsonParserUtil.filterInvalidTweet(source);
+        long feedFilter = System.nanoTime() - start;
+        assertEquals(linked.size(), feed.size());
+
+        // binding rows reads them by position, LinkedList walks to the middle from either end
+        long[] linkedGet = new long[2];
+        long[] feedGet = new long[2];
+        int[] positions = {10, feed.size() / 2};
+        for (int i = 0; i < 1000; ++i) {
+            linked.get(positions[i % 2]);
+            feed.get(positions[i % 2]);
+        }
+        for (int p = 0; p < positions.length; ++p) {
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; ++i) {
+                assertNotNull(linked.get(positions[p]));
+            }
+            linkedGet[p] = (System.nanoTime() - start) / 1000;
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; ++i) {
+                assertNotNull(feed.get(positions[p]));
+            }
+            feedGet[p] = (System.nanoTime() - start) / 1000;
+        }
+
+        System.out.println(String.format("filter %d tweets: LinkedList %.2f ms, TweetFeed %.2f ms; "
+                        + "get(head)/get(middle) ns: LinkedList %d/%d, TweetFeed %d/%d",
+                count, linkedFilter / 1e6, feedFilter / 1e6, linkedGet[0], linkedGet[1], feedGet[0], feedGet[1]));
+    }
+}
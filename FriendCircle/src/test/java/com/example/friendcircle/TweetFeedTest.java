@@ -0,0 +1,104 @@
+package com.example.friendcircle;
+
+import com.example.friendcircle.bean.TweetBean;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link TweetFeed} keeps appended feeds independent, and {@link JsonParserUtil#filterInvalidTweet(List)}
+ * against the former filtering of LinkedList, see {@link TweetFeedBenchmark} for their speed.
+ */
+public class TweetFeedTest {
+    static TweetBean tweet(String content, boolean valid) {
+        TweetBean tweet = new TweetBean();
+        tweet.setContent(content);
+        if (valid) {
+            tweet.setSender(new TweetBean.SenderBean(null, null, null));
+        }
+        return tweet;
+    }
+
+    private static List<TweetBean> tweets(int from, int to) {
+        List<TweetBean> tweets = new ArrayList<>();
+        for (int i = from; i < to; ++i) {
+            tweets.add(tweet("tweet " + i, true));
+        }
+        return tweets;
+    }
+
+    @Test
+    public void plus_keepsFormerFeeds() {
+        TweetFeed first = TweetFeed.copyOf(tweets(0, 3));
+        TweetFeed second = first.plus(tweets(3, 5));
+        assertEquals(3, first.size());
+        assertEquals(5, second.size());
+        assertEquals("tweet 4", second.get(4).getContent());
+
+        // appending to a feed which is not the tail copies, so neither sees the other's tweets
+        TweetFeed branch = first.plus(tweets(10, 12));
+        assertEquals("tweet 10", branch.get(3).getContent());
+        assertEquals("tweet 3", second.get(3).getContent());
+        assertEquals(3, first.size());
+    }
+
+    @Test
+    public void plus_growsManyTimes() {
+        TweetFeed feed = TweetFeed.empty();
+        List<TweetFeed> feeds = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            feed = feed.plus(tweets(i * 3, i * 3 + 3));
+            feeds.add(feed);
+        }
+        assertEquals(300, feed.size());
+        for (int i = 0; i < feeds.size(); ++i) {
+            assertEquals((i + 1) * 3, feeds.get(i).size());
+            assertEquals("tweet " + (i * 3 + 2), feeds.get(i).get(i * 3 + 2).getContent());
+        }
+        assertEquals(0, TweetFeed.empty().size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable() {
+        TweetFeed.copyOf(tweets(0, 3)).add(tweet("x", true));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBounds() {
+        TweetFeed feed = TweetFeed.copyOf(tweets(0, 5)).plus(tweets(5, 6));
+        // storage has room beyond size, it's never read
+        TweetFeed.copyOf(tweets(0, 5)).get(5);
+        feed.get(6);
+    }
+
+    @Test
+    public void filterInvalidTweet() {
+        List<TweetBean> list = Arrays.asList(tweet("a", true), tweet("b", false), null, tweet("c", true),
+                tweet("d", false));
+        TweetFeed valid = JsonParserUtil.filterInvalidTweet(list);
+        assertEquals(2, valid.size());
+        assertEquals("a", valid.get(0).getContent());
+        assertEquals("c", valid.get(1).getContent());
+        assertEquals(0, JsonParserUtil.filterInvalidTweet(null).size());
+    }
+
+    /**
+     * how invalid tweets were filtered before: get(i) and remove(object) in a loop
+     */
+    static LinkedList<TweetBean> filterLinkedList(LinkedList<TweetBean> list) {
+        for (int i = 0; i < list.size(); ++i) {
+            TweetBean tweetBean = list.get(i);
+            if (!tweetBean.isValid()) {
+                list.remove(tweetBean);
+                --i;
+            }
+        }
+        return list;
+    }
+}